@@ -0,0 +1,135 @@
+package io.github.xyzxqs.app.xphotoview;
+
+import android.content.Context;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.resource.bitmap.GlideBitmapDrawable;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+
+/**
+ * Starts loading the full photo when a grid cell is pressed, before the click opens the preview.
+ * <p>
+ * The prefetch is the same Glide request as the preview's, sized by {@link #override(Context)}, so
+ * the preview joins the running load or hits the memory cache. It is cancelled when the press turns
+ * into a scroll or is cancelled.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+public final class PhotoPrefetcher {
+    private static final String TAG = "PhotoPrefetcher";
+
+    private static Target<GlideDrawable> pending;
+    private static String pendingUrl;
+    private static int pendingBytes;
+
+    private static int prefetchCount;
+    private static int hitCount;
+    private static int wastedCount;
+    private static long wastedBytes;
+
+    private static final RequestListener<String, GlideDrawable> listener =
+            new RequestListener<String, GlideDrawable>() {
+                @Override
+                public boolean onException(Exception e, String model, Target<GlideDrawable> target,
+                                           boolean isFirstResource) {
+                    return false;
+                }
+
+                @Override
+                public boolean onResourceReady(GlideDrawable resource, String model,
+                                               Target<GlideDrawable> target,
+                                               boolean isFromMemoryCache, boolean isFirstResource) {
+                    if (target == pending) {
+                        pendingBytes = byteCountOf(resource);
+                    }
+                    return false;
+                }
+            };
+
+    private PhotoPrefetcher() {
+    }
+
+    /**
+     * @return the size to load the full photo at, for both the prefetch and the preview
+     */
+    public static int[] override(Context context) {
+        DisplayMetrics dm = context.getResources().getDisplayMetrics();
+        return new int[]{dm.widthPixels, dm.heightPixels};
+    }
+
+    /**
+     * Start loading the photo, on touch down of its grid cell.
+     */
+    public static void prefetch(Context context, String url) {
+        if (url.equals(pendingUrl)) {
+            return;
+        }
+        cancel();
+        int[] size = override(context);
+        pendingUrl = url;
+        pendingBytes = 0;
+        prefetchCount++;
+        pending = Glide.with(context.getApplicationContext())
+                .load(url)
+                .listener(listener)
+                .preload(size[0], size[1]);
+    }
+
+    /**
+     * The preview of the photo is opening, the prefetch of it is a hit.
+     */
+    public static void onOpen(String url) {
+        if (url.equals(pendingUrl)) {
+            hitCount++;
+            //the load goes on for the preview
+            pending = null;
+            pendingUrl = null;
+            Log.d(TAG, "hit, " + stats());
+        }
+    }
+
+    /**
+     * Cancel the prefetch, on scroll or cancel of the press.
+     */
+    public static void cancel() {
+        if (pending != null) {
+            wastedCount++;
+            wastedBytes += pendingBytes;
+            Glide.clear(pending);
+            pending = null;
+            pendingUrl = null;
+            Log.d(TAG, "wasted, " + stats());
+        }
+    }
+
+    /**
+     * @return the hits per prefetch
+     */
+    public static float getHitRate() {
+        return prefetchCount == 0 ? 0 : (float) hitCount / prefetchCount;
+    }
+
+    /**
+     * @return the bytes decoded by the prefetches which were not used
+     */
+    public static long getWastedBytes() {
+        return wastedBytes;
+    }
+
+    public static String stats() {
+        return "prefetch: " + prefetchCount + ", hit: " + hitCount + ", wasted: " + wastedCount
+                + " (" + wastedBytes + " bytes decoded), hit rate: " + getHitRate();
+    }
+
+    private static int byteCountOf(GlideDrawable resource) {
+        if (resource instanceof GlideBitmapDrawable) {
+            return ((GlideBitmapDrawable) resource).getBitmap().getByteCount();
+        }
+        return 0;
+    }
+}
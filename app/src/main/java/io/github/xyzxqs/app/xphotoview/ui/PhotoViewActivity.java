@@ -1,6 +1,7 @@
 package io.github.xyzxqs.app.xphotoview.ui;
 
 import android.content.Intent;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v7.app.AppCompatActivity;
@@ -9,6 +10,7 @@ import android.view.View;
 
 import com.bumptech.glide.Glide;
 
+import io.github.xyzxqs.app.xphotoview.PhotoPrefetcher;
 import io.github.xyzxqs.app.xphotoview.R;
 import io.github.xyzxqs.libs.xphotoview.XphotoView;
 
@@ -52,8 +54,14 @@ public class PhotoViewActivity extends AppCompatActivity {
         });
 
         if (!TextUtils.isEmpty(url)) {
+            //the thumbnail of the grid is shown at once, the full photo is swapped in when loaded
+            Drawable thumbnail = xphotoView.setHandoffImage(url);
+            //the same size as the prefetch started on touch down, so it joins that load
+            int[] size = PhotoPrefetcher.override(this);
             Glide.with(this)
                     .load(url)
+                    .override(size[0], size[1])
+                    .placeholder(thumbnail)
                     .into(xphotoView);
         }
 
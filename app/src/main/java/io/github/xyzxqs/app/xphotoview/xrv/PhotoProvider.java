@@ -3,13 +3,16 @@ package io.github.xyzxqs.app.xphotoview.xrv;
 import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
 import com.bumptech.glide.Glide;
 
+import io.github.xyzxqs.app.xphotoview.PhotoPrefetcher;
 import io.github.xyzxqs.app.xphotoview.R;
+import io.github.xyzxqs.libs.xphotoview.XphotoHandoff;
 import io.github.xyzxqs.libs.xrv.XrvProvider;
 
 /**
@@ -29,9 +32,13 @@ public class PhotoProvider extends XrvProvider<String, PhotoProvider.PhotoViewHo
 
     @Override
     public void onBindViewHolder(final PhotoViewHolder holder, String itemData) {
+        holder.url = itemData;
         if (!TextUtils.isEmpty(itemData)) {
+            //keep the aspect ratio of the photo in the bitmap and crop when drawing,
+            //so the thumbnail can be handed to the preview
             Glide.with(holder.itemView.getContext())
                     .load(itemData)
+                    .dontTransform()
                     .into(holder.photo);
         } else {
             holder.itemView.setVisibility(View.GONE);
@@ -42,14 +49,42 @@ public class PhotoProvider extends XrvProvider<String, PhotoProvider.PhotoViewHo
         this.clickListener = clickListener;
     }
 
-    static class PhotoViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    static class PhotoViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, View.OnTouchListener {
         ImageView photo;
+        String url;
         private OnPhotoClickListener listener;
 
         public PhotoViewHolder(View itemView) {
             super(itemView);
             photo = (ImageView) itemView.findViewById(R.id.photo_image);
             photo.setOnClickListener(this);
+            photo.setOnTouchListener(this);
+        }
+
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            if (TextUtils.isEmpty(url)) {
+                return false;
+            }
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    //use the time before the click to load the full photo
+                    PhotoPrefetcher.prefetch(v.getContext(), url);
+                    break;
+                case MotionEvent.ACTION_UP:
+                    if (event.getX() < 0 || event.getX() > v.getWidth()
+                            || event.getY() < 0 || event.getY() > v.getHeight()) {
+                        //released outside, no click
+                        PhotoPrefetcher.cancel();
+                    }
+                    break;
+                case MotionEvent.ACTION_CANCEL:
+                    //the list takes over to scroll
+                    PhotoPrefetcher.cancel();
+                    break;
+            }
+            return false;
         }
 
         public void setOnClickListener(OnPhotoClickListener listener) {
@@ -59,6 +94,10 @@ public class PhotoProvider extends XrvProvider<String, PhotoProvider.PhotoViewHo
         @Override
         public void onClick(View v) {
             if (listener != null) {
+                if (!TextUtils.isEmpty(url)) {
+                    XphotoHandoff.lend(url, photo.getDrawable());
+                    PhotoPrefetcher.onOpen(url);
+                }
                 int[] loc = new int[2];
                 photo.getLocationOnScreen(loc);
                 listener.onPhotoClick(getAdapterPosition(), loc[0], loc[1], photo.getWidth(), photo.getHeight());
@@ -0,0 +1,61 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.graphics.drawable.ShapeDrawable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Instrumentation tests of an {@link ImageMatrixAnimator} started inside a transaction of an
+ * {@link XphotoView}, as a settle started by the up event of a gesture.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageMatrixAnimatorTransactionTest {
+
+    private static final int VIEW_SIZE = 1000;
+    private static final int IMAGE_SIZE = 500;
+    private static final float DELTA = 1e-3f;
+
+    @Test
+    public void settle_startsFromPendingTransform() throws Exception {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                XphotoView view = new XphotoView(InstrumentationRegistry.getTargetContext());
+                ShapeDrawable drawable = new ShapeDrawable();
+                drawable.setIntrinsicWidth(IMAGE_SIZE);
+                drawable.setIntrinsicHeight(IMAGE_SIZE);
+                view.setImageDrawable(drawable);
+                final int spec = View.MeasureSpec.makeMeasureSpec(VIEW_SIZE, View.MeasureSpec.EXACTLY);
+                view.measure(spec, spec);
+                view.layout(0, 0, VIEW_SIZE, VIEW_SIZE);
+                VirtualFrameClock clock = new VirtualFrameClock();
+                view.setFrameClock(clock);
+
+                final float scale = view.getImageScaleX();
+                final float translateX = view.getImageTranslateX();
+                final float translateY = view.getImageTranslateY();
+
+                view.beginTransaction();
+                view.postTranslate(0, 100);
+                //a spring to where the image already is, the delta of the transaction is kept
+                new ImageMatrixAnimator.Builder(view)
+                        .setFrameClock(clock)
+                        .spring(MatrixSpring.DEFAULT_STIFFNESS)
+                        .build()
+                        .start();
+                view.commitTransaction();
+
+                clock.step(VirtualFrameClock.DEFAULT_FRAME_INTERVAL_NANOS);
+                assertEquals(scale, view.getImageScaleX(), DELTA);
+                assertEquals(translateX, view.getImageTranslateX(), DELTA);
+                assertEquals(translateY + 100, view.getImageTranslateY(), DELTA);
+            }
+        });
+    }
+}
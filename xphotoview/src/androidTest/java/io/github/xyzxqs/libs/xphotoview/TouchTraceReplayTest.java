@@ -0,0 +1,124 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.graphics.drawable.ShapeDrawable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Instrumentation tests of {@link TouchTraceReplay}: a recorded pinch replayed on a laid out
+ * {@link XphotoView} gives the same frames on every run.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TouchTraceReplayTest {
+
+    private static final int VIEW_SIZE = 1000;
+    private static final int IMAGE_SIZE = 500;
+    private static final long LAST_EVENT_TIME = 440;
+
+    /**
+     * One finger down, a second one, a pinch from 200 to 400 px of span around the center with two
+     * samples per event, a rest so the fling velocity is gone, then both fingers up.
+     */
+    private static byte[] writePinchTrace() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TouchTrace.Writer writer = new TouchTrace.Writer(out);
+        writer.beginEvent(MotionEvent.ACTION_DOWN, 0, 1, 1);
+        writer.writePointerId(0);
+        writer.writeSampleTime(0);
+        writer.writeCoords(400, 500);
+
+        writePinch(writer, MotionEvent.ACTION_POINTER_DOWN, 1, 20, 200);
+        for (long time = 40; time <= 240; time += 20) {
+            writer.beginEvent(MotionEvent.ACTION_MOVE, 0, 2, 2);
+            writer.writePointerId(0);
+            writer.writePointerId(1);
+            for (long sampleTime = time - 10; sampleTime <= time; sampleTime += 10) {
+                final float span = 200 + 200 * (sampleTime - 20) / 220f;
+                writer.writeSampleTime(sampleTime);
+                writer.writeCoords(500 - span / 2, 500);
+                writer.writeCoords(500 + span / 2, 500);
+            }
+        }
+        for (long time = 260; time <= 400; time += 20) {
+            writePinch(writer, MotionEvent.ACTION_MOVE, 0, time, 400);
+        }
+        writePinch(writer, MotionEvent.ACTION_POINTER_UP, 1, 420, 400);
+
+        writer.beginEvent(MotionEvent.ACTION_UP, 0, 1, 1);
+        writer.writePointerId(0);
+        writer.writeSampleTime(LAST_EVENT_TIME);
+        writer.writeCoords(300, 500);
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static void writePinch(TouchTrace.Writer writer, int action, int actionIndex,
+                                   long time, float span) throws IOException {
+        writer.beginEvent(action, actionIndex, 2, 1);
+        writer.writePointerId(0);
+        writer.writePointerId(1);
+        writer.writeSampleTime(time);
+        writer.writeCoords(500 - span / 2, 500);
+        writer.writeCoords(500 + span / 2, 500);
+    }
+
+    private static TouchTraceReplay.Report replay(final byte[] trace) throws Exception {
+        final TouchTraceReplay.Report[] report = new TouchTraceReplay.Report[1];
+        final Exception[] error = new Exception[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                XphotoView view = new XphotoView(InstrumentationRegistry.getTargetContext());
+                //the prediction and its retract on the pointer changes are replayed too
+                view.setTouchPredictionLeadTime(32);
+                ShapeDrawable drawable = new ShapeDrawable();
+                drawable.setIntrinsicWidth(IMAGE_SIZE);
+                drawable.setIntrinsicHeight(IMAGE_SIZE);
+                view.setImageDrawable(drawable);
+                final int spec = View.MeasureSpec.makeMeasureSpec(VIEW_SIZE, View.MeasureSpec.EXACTLY);
+                view.measure(spec, spec);
+                view.layout(0, 0, VIEW_SIZE, VIEW_SIZE);
+                try {
+                    report[0] = new TouchTraceReplay(view).replay(new ByteArrayInputStream(trace));
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return report[0];
+    }
+
+    @Test
+    public void replay_isDeterministic() throws Exception {
+        byte[] trace = writePinchTrace();
+        TouchTraceReplay.Report first = replay(trace);
+        TouchTraceReplay.Report second = replay(trace);
+
+        //the frames on the grid up to the last event, and one for the up event after them, the
+        //zoomed image covers the view so no settle animation is left
+        final int frameCount = (int) (LAST_EVENT_TIME * 1000000
+                / VirtualFrameClock.DEFAULT_FRAME_INTERVAL_NANOS) + 1;
+        assertEquals(23, first.eventCount);
+        assertEquals(frameCount, first.getFrameCount());
+        assertEquals(frameCount, second.getFrameCount());
+        assertEquals(0, first.maxTransformDifference(second), 0);
+
+        //the pinch got to the view, from the laid out scale of 2 to about 4
+        assertTrue(first.getFrame(frameCount - 1).scaleX > 3);
+    }
+}
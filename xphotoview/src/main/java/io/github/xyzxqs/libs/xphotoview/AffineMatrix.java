@@ -0,0 +1,291 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.graphics.Matrix;
+import android.support.annotation.NonNull;
+
+/**
+ * A pure java 2D affine transform, laid out as the first six values of {@link Matrix}:
+ * <pre>
+ * | MSCALE_X MSKEW_X  MTRANS_X |
+ * | MSKEW_Y  MSCALE_Y MTRANS_Y |
+ * </pre>
+ * The post operations have the same semantics as the {@link Matrix} ones, so the transform math
+ * can run (and be tested) off device, the native {@link Matrix} is only touched by
+ * {@link #getMatrix(Matrix)} and {@link #setMatrix(Matrix)}.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class AffineMatrix {
+
+    static final int SCALE_X = 0;
+    static final int SKEW_X = 1;
+    static final int TRANS_X = 2;
+    static final int SKEW_Y = 3;
+    static final int SCALE_Y = 4;
+    static final int TRANS_Y = 5;
+
+    //same as skia's SK_ScalarNearlyZero, used to snap sin/cos of right angles
+    private static final float NEARLY_ZERO = 1f / (1 << 12);
+
+    final float[] values = new float[6];
+
+    //bridge buffer for the native matrix
+    private final float[] matrixValues = new float[9];
+
+    AffineMatrix() {
+        reset();
+    }
+
+    void reset() {
+        values[SCALE_X] = 1;
+        values[SKEW_X] = 0;
+        values[TRANS_X] = 0;
+        values[SKEW_Y] = 0;
+        values[SCALE_Y] = 1;
+        values[TRANS_Y] = 0;
+    }
+
+    void set(@NonNull AffineMatrix src) {
+        System.arraycopy(src.values, 0, values, 0, values.length);
+    }
+
+    void setValues(float scaleX, float skewX, float transX, float skewY, float scaleY, float transY) {
+        values[SCALE_X] = scaleX;
+        values[SKEW_X] = skewX;
+        values[TRANS_X] = transX;
+        values[SKEW_Y] = skewY;
+        values[SCALE_Y] = scaleY;
+        values[TRANS_Y] = transY;
+    }
+
+    boolean isIdentity() {
+        return values[SCALE_X] == 1 && values[SKEW_X] == 0 && values[TRANS_X] == 0
+                && values[SKEW_Y] == 0 && values[SCALE_Y] == 1 && values[TRANS_Y] == 0;
+    }
+
+    /**
+     * Copy the values from a {@link Matrix}, the perspective values are dropped.
+     */
+    void setMatrix(@NonNull Matrix matrix) {
+        matrix.getValues(matrixValues);
+        System.arraycopy(matrixValues, 0, values, 0, values.length);
+    }
+
+    /**
+     * Write this transform into a {@link Matrix}.
+     *
+     * @return the given matrix
+     */
+    Matrix getMatrix(@NonNull Matrix matrix) {
+        System.arraycopy(values, 0, matrixValues, 0, values.length);
+        matrixValues[Matrix.MPERSP_0] = 0;
+        matrixValues[Matrix.MPERSP_1] = 0;
+        matrixValues[Matrix.MPERSP_2] = 1;
+        matrix.setValues(matrixValues);
+        return matrix;
+    }
+
+    /**
+     * Decompose this transform into the given {@link MatrixValues}.
+     *
+     * @return the out param
+     */
+    MatrixValues decompose(@NonNull MatrixValues out) {
+        System.arraycopy(values, 0, out.values, 0, values.length);
+        out.values[Matrix.MPERSP_0] = 0;
+        out.values[Matrix.MPERSP_1] = 0;
+        out.values[Matrix.MPERSP_2] = 1;
+        return out.decompose();
+    }
+
+    /**
+     * Set this transform to scale and rotate the source around the pivot (px, py), then move the
+     * pivot to (x, y). The same as reset, postScale(sx, sy, px, py), postRotate(degrees, px, py) and
+     * postTranslate(x - px, y - py), but in a single pass.
+     */
+    void setPivotTransform(float scaleX, float scaleY, float degrees, float px, float py, float x, float y) {
+        final double radians = Math.toRadians(degrees);
+        final float sin = snapToZero((float) Math.sin(radians));
+        final float cos = snapToZero((float) Math.cos(radians));
+
+        final float a = cos * scaleX;
+        final float b = -sin * scaleY;
+        final float c = sin * scaleX;
+        final float d = cos * scaleY;
+
+        values[SCALE_X] = a;
+        values[SKEW_X] = b;
+        values[TRANS_X] = x - (a * px + b * py);
+        values[SKEW_Y] = c;
+        values[SCALE_Y] = d;
+        values[TRANS_Y] = y - (c * px + d * py);
+    }
+
+    void postTranslate(float dx, float dy) {
+        values[TRANS_X] += dx;
+        values[TRANS_Y] += dy;
+    }
+
+    /**
+     * Scale the drawable space before this transform, which is this = this * S(sx, sy). The point
+     * (x, y) is then mapped to where (x * sx, y * sy) was mapped.
+     */
+    void preScale(float sx, float sy) {
+        values[SCALE_X] *= sx;
+        values[SKEW_Y] *= sx;
+        values[SKEW_X] *= sy;
+        values[SCALE_Y] *= sy;
+    }
+
+    void postScale(float sx, float sy) {
+        postScale(sx, sy, 0, 0);
+    }
+
+    void postScale(float sx, float sy, float px, float py) {
+        values[SCALE_X] *= sx;
+        values[SKEW_X] *= sx;
+        values[TRANS_X] = sx * (values[TRANS_X] - px) + px;
+        values[SKEW_Y] *= sy;
+        values[SCALE_Y] *= sy;
+        values[TRANS_Y] = sy * (values[TRANS_Y] - py) + py;
+    }
+
+    void postRotate(float degrees) {
+        postRotate(degrees, 0, 0);
+    }
+
+    void postRotate(float degrees, float px, float py) {
+        final double radians = Math.toRadians(degrees);
+        final float sin = snapToZero((float) Math.sin(radians));
+        final float cos = snapToZero((float) Math.cos(radians));
+
+        final float a = values[SCALE_X];
+        final float b = values[SKEW_X];
+        final float tx = values[TRANS_X] - px;
+        final float c = values[SKEW_Y];
+        final float d = values[SCALE_Y];
+        final float ty = values[TRANS_Y] - py;
+
+        values[SCALE_X] = cos * a - sin * c;
+        values[SKEW_X] = cos * b - sin * d;
+        values[TRANS_X] = cos * tx - sin * ty + px;
+        values[SKEW_Y] = sin * a + cos * c;
+        values[SCALE_Y] = sin * b + cos * d;
+        values[TRANS_Y] = sin * tx + cos * ty + py;
+    }
+
+    /**
+     * Apply the other transform after this one, which is this = other * this.
+     */
+    void postConcat(@NonNull AffineMatrix other) {
+        final float a = values[SCALE_X];
+        final float b = values[SKEW_X];
+        final float tx = values[TRANS_X];
+        final float c = values[SKEW_Y];
+        final float d = values[SCALE_Y];
+        final float ty = values[TRANS_Y];
+        final float[] o = other.values;
+
+        values[SCALE_X] = o[SCALE_X] * a + o[SKEW_X] * c;
+        values[SKEW_X] = o[SCALE_X] * b + o[SKEW_X] * d;
+        values[TRANS_X] = o[SCALE_X] * tx + o[SKEW_X] * ty + o[TRANS_X];
+        values[SKEW_Y] = o[SKEW_Y] * a + o[SCALE_Y] * c;
+        values[SCALE_Y] = o[SKEW_Y] * b + o[SCALE_Y] * d;
+        values[TRANS_Y] = o[SKEW_Y] * tx + o[SCALE_Y] * ty + o[TRANS_Y];
+    }
+
+    /**
+     * Apply this transform to the src array of 2D points, and write the transformed points into
+     * the dst array. The points are stored as [x0, y0, x1, y1, ...].
+     */
+    void mapPoints(@NonNull float[] dst, @NonNull float[] src) {
+        mapPoints(dst, 0, src, 0, src.length >> 1);
+    }
+
+    void mapPoints(@NonNull float[] dst, int dstIndex, @NonNull float[] src, int srcIndex, int pointCount) {
+        final float a = values[SCALE_X];
+        final float b = values[SKEW_X];
+        final float tx = values[TRANS_X];
+        final float c = values[SKEW_Y];
+        final float d = values[SCALE_Y];
+        final float ty = values[TRANS_Y];
+        for (int i = 0; i < pointCount; i++) {
+            final float x = src[srcIndex + i * 2];
+            final float y = src[srcIndex + i * 2 + 1];
+            dst[dstIndex + i * 2] = a * x + b * y + tx;
+            dst[dstIndex + i * 2 + 1] = c * x + d * y + ty;
+        }
+    }
+
+    /**
+     * Map the point (x, y), without modify this transform.
+     *
+     * @return the mapped x
+     */
+    float mapX(float x, float y) {
+        return values[SCALE_X] * x + values[SKEW_X] * y + values[TRANS_X];
+    }
+
+    /**
+     * Map the point (x, y), without modify this transform.
+     *
+     * @return the mapped y
+     */
+    float mapY(float x, float y) {
+        return values[SKEW_Y] * x + values[SCALE_Y] * y + values[TRANS_Y];
+    }
+
+    /**
+     * Write the inverse of this transform into inverse, which may be this one.
+     *
+     * @return false if this transform can not be inverted, and the inverse is left unmodified
+     */
+    boolean invert(@NonNull AffineMatrix inverse) {
+        final float a = values[SCALE_X];
+        final float b = values[SKEW_X];
+        final float tx = values[TRANS_X];
+        final float c = values[SKEW_Y];
+        final float d = values[SCALE_Y];
+        final float ty = values[TRANS_Y];
+
+        final double det = (double) a * d - (double) b * c;
+        if (det == 0 || Double.isNaN(det) || Double.isInfinite(det)) {
+            return false;
+        }
+        final double invDet = 1.0 / det;
+        inverse.values[SCALE_X] = (float) (d * invDet);
+        inverse.values[SKEW_X] = (float) (-b * invDet);
+        inverse.values[TRANS_X] = (float) ((b * (double) ty - d * (double) tx) * invDet);
+        inverse.values[SKEW_Y] = (float) (-c * invDet);
+        inverse.values[SCALE_Y] = (float) (a * invDet);
+        inverse.values[TRANS_Y] = (float) ((c * (double) tx - a * (double) ty) * invDet);
+        return true;
+    }
+
+    private static float snapToZero(float value) {
+        return Math.abs(value) < NEARLY_ZERO ? 0 : value;
+    }
+
+    @Override
+    public String toString() {
+        return "AffineMatrix{[" + values[SCALE_X] + ", " + values[SKEW_X] + ", " + values[TRANS_X] + "]["
+                + values[SKEW_Y] + ", " + values[SCALE_Y] + ", " + values[TRANS_Y] + "]}";
+    }
+}
@@ -0,0 +1,160 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.TreeMap;
+
+/**
+ * A pool of mutable bitmaps to decode into through {@link android.graphics.BitmapFactory.Options#inBitmap},
+ * bucketed by the allocation size and capped by bytes. The least recently pooled bitmaps are
+ * recycled first when the pool is over the cap.
+ * <p>
+ * Since API 19 a pooled bitmap is reused for any size that fits in its allocation (up to twice
+ * the needed bytes, to not waste big allocations on small decodes); on API 16 to 18 only for the
+ * same width, height and config; before API 16 region decoding can not reuse bitmaps and the pool
+ * recycles what it is given.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class BitmapPool {
+
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+
+    //the pooled bitmaps, the least recently pooled first
+    private final ArrayDeque<Bitmap> order = new ArrayDeque<>();
+
+    private final int maxBytes;
+    private int currentBytes = 0;
+
+    BitmapPool(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    static boolean canReuseBitmaps() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    }
+
+    /**
+     * @return the bytes of the memory allocated for the bitmap
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static int byteCountOf(@NonNull Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    static int bytesPerPixel(@Nullable Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565) {
+            return 2;
+        }
+        return 4;
+    }
+
+    /**
+     * Give a bitmap that is no longer used to the pool, it is recycled if it can not be reused.
+     */
+    synchronized void put(@NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        final int size = byteCountOf(bitmap);
+        if (!canReuseBitmaps() || !bitmap.isMutable() || size > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(size, bucket);
+        }
+        bucket.add(bitmap);
+        order.add(bitmap);
+        currentBytes += size;
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * Get a bitmap to decode into with {@link android.graphics.BitmapFactory.Options#inBitmap},
+     * already reconfigured to the given size and config.
+     *
+     * @return the bitmap, or null if none in the pool fits
+     */
+    @Nullable
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    synchronized Bitmap get(int width, int height, @NonNull Bitmap.Config config) {
+        if (!canReuseBitmaps()) {
+            return null;
+        }
+        final int needed = width * height * bytesPerPixel(config);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            Integer size = buckets.ceilingKey(needed);
+            if (size == null || size > needed * 2) {
+                return null;
+            }
+            Bitmap bitmap = take(size, buckets.get(size).peekLast());
+            bitmap.reconfigure(width, height, config);
+            return bitmap;
+        }
+        ArrayDeque<Bitmap> bucket = buckets.get(needed);
+        if (bucket != null) {
+            for (Bitmap bitmap : bucket) {
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                    return take(needed, bitmap);
+                }
+            }
+        }
+        return null;
+    }
+
+    private Bitmap take(int size, Bitmap bitmap) {
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        bucket.remove(bitmap);
+        if (bucket.isEmpty()) {
+            buckets.remove(size);
+        }
+        order.remove(bitmap);
+        currentBytes -= size;
+        return bitmap;
+    }
+
+    /**
+     * Recycle the least recently pooled bitmaps until the pool is not over the given bytes.
+     */
+    synchronized void trimToSize(int bytes) {
+        while (currentBytes > bytes && !order.isEmpty()) {
+            Bitmap bitmap = order.peekFirst();
+            take(byteCountOf(bitmap), bitmap);
+            bitmap.recycle();
+        }
+    }
+
+    synchronized int size() {
+        return currentBytes;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Picks the bitmap config of the tile decodes. Opaque images are decoded to RGB_565, which halves
+ * the memory of ARGB_8888 with no visible difference while the image is scaled down, and only the
+ * full resolution level, seen at high zoom where 565 banding would show, is upgraded to ARGB_8888.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class DecodeFormatPolicy {
+
+    private DecodeFormatPolicy() {
+    }
+
+    /**
+     * @return true if the source image is known to be opaque from its mime type
+     */
+    static boolean isOpaqueMimeType(@Nullable String mimeType) {
+        return "image/jpeg".equals(mimeType);
+    }
+
+    /**
+     * @param opaque       whether the image has no alpha
+     * @param base         whether it is the base level of the image
+     * @param sampleSize   the sample size of the decode
+     * @param imageQuality the image quality under memory pressure, see {@link XphotoView#getImageQuality()}
+     * @return true to decode to RGB_565, false to ARGB_8888
+     */
+    static boolean preferRgb565(boolean opaque, boolean base, int sampleSize, int imageQuality) {
+        if (!opaque) {
+            return false;
+        }
+        return base || sampleSize > 1 || imageQuality >= XphotoView.IMAGE_QUALITY_REDUCED;
+    }
+}
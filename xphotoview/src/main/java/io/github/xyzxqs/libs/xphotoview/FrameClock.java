@@ -0,0 +1,192 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * The source of frame callbacks and frame times (in nanoseconds) for the image matrix animations.
+ * <p>
+ * The default clock runs on the main thread and uses the vsync time of {@link Choreographer}
+ * (or a {@link Handler} posting at about 60fps before Jelly Bean). Tests and benchmarks can use a
+ * {@link VirtualFrameClock} to step animations without an android runtime.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+abstract class FrameClock {
+
+    interface FrameCallback {
+        /**
+         * Called when a new frame is being rendered.
+         *
+         * @param frameTimeNanos the time when the frame started rendering, in the
+         *                       {@link #nanoTime()} time base
+         */
+        void doFrame(long frameTimeNanos);
+    }
+
+    private static FrameClock defaultClock;
+
+    /**
+     * @return the shared main thread clock
+     */
+    static FrameClock getDefault() {
+        if (defaultClock == null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                defaultClock = new ChoreographerFrameClock();
+            } else {
+                defaultClock = new HandlerFrameClock();
+            }
+        }
+        return defaultClock;
+    }
+
+    /**
+     * Run the callback once at the next frame, posting a pending callback again has no effect.
+     */
+    abstract void postFrameCallback(@NonNull FrameCallback callback);
+
+    abstract void removeFrameCallback(@NonNull FrameCallback callback);
+
+    /**
+     * @return the current time of this clock, in nanoseconds
+     */
+    abstract long nanoTime();
+
+    /**
+     * Keeps the posted callbacks and runs them all at a frame, shared by the implementations so a
+     * post allocates nothing.
+     */
+    static final class CallbackQueue {
+        private final ArrayList<FrameCallback> pending = new ArrayList<>();
+        private final ArrayList<FrameCallback> running = new ArrayList<>();
+
+        /**
+         * @return true if the queue was empty
+         */
+        boolean add(FrameCallback callback) {
+            if (pending.contains(callback)) {
+                return false;
+            }
+            pending.add(callback);
+            return pending.size() == 1;
+        }
+
+        /**
+         * The callback does not run anymore, even if it is in the frame being run now.
+         */
+        void remove(FrameCallback callback) {
+            pending.remove(callback);
+            final int index = running.indexOf(callback);
+            if (index >= 0) {
+                //the indices of the running frame are kept, a callback that already ran is harmless
+                running.set(index, null);
+            }
+        }
+
+        boolean isEmpty() {
+            return pending.isEmpty();
+        }
+
+        /**
+         * Run the callbacks posted so far, callbacks posted while running wait for the next frame.
+         */
+        void run(long frameTimeNanos) {
+            running.addAll(pending);
+            pending.clear();
+            for (int i = 0; i < running.size(); i++) {
+                FrameCallback callback = running.get(i);
+                if (callback != null) {
+                    callback.doFrame(frameTimeNanos);
+                }
+            }
+            running.clear();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class ChoreographerFrameClock extends FrameClock
+            implements Choreographer.FrameCallback {
+        private final Choreographer choreographer = Choreographer.getInstance();
+        private final CallbackQueue queue = new CallbackQueue();
+
+        @Override
+        void postFrameCallback(@NonNull FrameCallback callback) {
+            if (queue.add(callback)) {
+                choreographer.postFrameCallback(this);
+            }
+        }
+
+        @Override
+        void removeFrameCallback(@NonNull FrameCallback callback) {
+            queue.remove(callback);
+            if (queue.isEmpty()) {
+                choreographer.removeFrameCallback(this);
+            }
+        }
+
+        @Override
+        long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            queue.run(frameTimeNanos);
+        }
+    }
+
+    private static final class HandlerFrameClock extends FrameClock implements Runnable {
+        private static final long FRAME_DELAY_MS = 16;
+
+        private final Handler handler = new Handler(Looper.getMainLooper());
+        private final CallbackQueue queue = new CallbackQueue();
+
+        @Override
+        void postFrameCallback(@NonNull FrameCallback callback) {
+            if (queue.add(callback)) {
+                handler.postDelayed(this, FRAME_DELAY_MS);
+            }
+        }
+
+        @Override
+        void removeFrameCallback(@NonNull FrameCallback callback) {
+            queue.remove(callback);
+            if (queue.isEmpty()) {
+                handler.removeCallbacks(this);
+            }
+        }
+
+        @Override
+        long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            queue.run(nanoTime());
+        }
+    }
+}
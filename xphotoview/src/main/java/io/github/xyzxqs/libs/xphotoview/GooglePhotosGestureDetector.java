@@ -17,8 +17,6 @@
 package io.github.xyzxqs.libs.xphotoview;
 
 import android.content.Context;
-import android.os.Handler;
-import android.os.Message;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
@@ -27,6 +25,11 @@ import android.view.VelocityTracker;
 import android.view.ViewConfiguration;
 
 /**
+ * Detects the Google Photos like gestures. The detector keeps only the primitive values it needs
+ * of the past events and decides the double tap and scroll state windows from
+ * {@link MotionEvent#getEventTime()}, so it allocates nothing per event and never posts to the
+ * message queue.
+ *
  * @author xyzxqs (xyzxqs@gmail.com)
  */
 
@@ -43,40 +46,47 @@ class GooglePhotosGestureDetector {
          */
         boolean onDoubleTapEvent(MotionEvent event);
 
-        boolean onSingleFingerScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY);
+        /**
+         * @param event the move event of the scroll, the down event of the gesture is not kept
+         * @return true if the scroll was applied, as for the scale and the rotation, the touch
+         * prediction follows the parts of the gesture that are applied
+         */
+        boolean onSingleFingerScroll(MotionEvent event, float distanceX, float distanceY);
 
-        boolean onMultiFingerScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY);
+        boolean onMultiFingerScroll(MotionEvent event, float distanceX, float distanceY);
 
-        boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY);
+        /**
+         * @param event the up event that ends the fling gesture
+         */
+        boolean onFling(MotionEvent event, float velocityX, float velocityY);
 
         boolean onScale(float scaleFactor, float focusX, float focusY);
 
         boolean onRotation(float deltaDegree, float cx, float cy);
 
+        /**
+         * Apply the delta of the touch prediction to the image as is, without any gesture handling,
+         * so it can be taken back exactly by its inverse.
+         *
+         * @return false if the image can not be moved by the fingers now, the delta is dropped
+         */
+        boolean onPredictionTransform(@NonNull AffineMatrix delta);
+
         void onActionDown(MotionEvent event);
 
         boolean onActionUp(MotionEvent event);
     }
 
-    private static class GestureHandler extends Handler {
-        @Override
-        public void handleMessage(Message msg) {
-            switch (msg.what) {
-                case MSG_TAP:
-                case MSG_SCROLL:
-                    //do nothing
-                    break;
-            }
-        }
-    }
-
     private static final String TAG = "GestureDebug";
     private static final long DOUBLE_TAP_TIMEOUT = ViewConfiguration.getDoubleTapTimeout();
     private static final long DOUBLE_TAP_MIN_TIME = 40;
     private static final int INVALID_POINTER_INDEX = -1;
-    private static final int MSG_TAP = 1;
-    private static final int MSG_SCROLL = 2;
     private static final long SCROLL_STATE_CHANGE_WINDOW = 40;
+    private static final long VELOCITY_STALE_TIME = 50;
+    //the sample position of the current values of an event, see readSample
+    private static final int CURRENT_SAMPLE = -1;
+    private static final float MAX_PREDICTED_SCALE = 0.1f;
+    private static final float MAX_PREDICTED_DEGREES = 5;
 
     private final float DOUBLE_TAP_SLOP;
     private final float SCALE_SPAN_SLOP;
@@ -86,10 +96,25 @@ class GooglePhotosGestureDetector {
 
     private GooglePhotosGestureListener gestureListener;
     private VelocityTracker velocityTracker;
-    private GestureHandler gestureHandler;
-
-    private MotionEvent currentDownEvent;
-    private MotionEvent previousUpEvent;
+    private final TouchPredictor touchPredictor;
+    //the prediction applied to the image, and its inverse which takes it back
+    private final AffineMatrix prediction = new AffineMatrix();
+    private final AffineMatrix predictionInverse = new AffineMatrix();
+    private boolean hasPrediction;
+
+    //what is left of the current down and the previous up events
+    private float currDownX;
+    private float currDownY;
+    private long currDownTime;
+    private long prevUpTime;
+    private boolean hasPrevUp;
+
+    //the double tap window opens at the down of a first tap
+    private long tapWindowStartTime;
+    private boolean tapWindowOpen;
+
+    //a single finger scroll may still turn into a multi finger one until this time
+    private long scrollStateDeadline;
 
     private float currFocusX;
     private float currFocusY;
@@ -101,6 +126,16 @@ class GooglePhotosGestureDetector {
     private float prevSpan;
 
     private float angle;
+    //the scale factor of all the samples of the current move event
+    private float batchScale;
+
+    //velocities of the last gesture, for the settle animations to continue with
+    private float velocityX;
+    private float velocityY;
+    private float scaleVelocity;
+    private float angleVelocity;
+    private long lastScaleTime;
+    private long lastRotationTime;
     private int pointerIndex1 = INVALID_POINTER_INDEX;
     private int pointerIndex2 = INVALID_POINTER_INDEX;
     private float fX, fY, sX, sY;
@@ -119,7 +154,6 @@ class GooglePhotosGestureDetector {
 
     public GooglePhotosGestureDetector(@Nullable Context context, @NonNull GooglePhotosGestureListener listener) {
         this.gestureListener = listener;
-        gestureHandler = new GestureHandler();
         if (context == null) {
             MIN_FLING_VELOCITY = ViewConfiguration.getMinimumFlingVelocity();
             MAX_FLING_VELOCITY = ViewConfiguration.getMaximumFlingVelocity();
@@ -132,12 +166,16 @@ class GooglePhotosGestureDetector {
             DOUBLE_TAP_SLOP = config.getScaledDoubleTapSlop();
             SCALE_SPAN_SLOP = config.getScaledTouchSlop() * 2;
         }
+        touchPredictor = new TouchPredictor(SCALE_SPAN_SLOP * 2, MAX_PREDICTED_SCALE, MAX_PREDICTED_DEGREES);
     }
 
     public boolean onTouchEvent(@NonNull MotionEvent ev) {
         final int action = ev.getActionMasked();
         if (velocityTracker == null) {
             velocityTracker = VelocityTracker.obtain();
+        } else if (action == MotionEvent.ACTION_DOWN) {
+            //reuse the tracker of the last gesture
+            velocityTracker.clear();
         }
         velocityTracker.addMovement(ev);
         calculateCurrFocusAndSpan(ev);
@@ -145,43 +183,71 @@ class GooglePhotosGestureDetector {
         boolean handled = false;
         switch (action) {
             case MotionEvent.ACTION_DOWN:
+                velocityX = velocityY = scaleVelocity = angleVelocity = 0;
+                lastScaleTime = lastRotationTime = ev.getEventTime();
                 gestureListener.onActionDown(ev);
+                touchPredictor.reset(currFocusX, currFocusY, ev.getEventTime());
                 updateLastFocus();
                 spanConfigChanged();
-                checkDoubleTapGesture(currentDownEvent, previousUpEvent, ev);
+                checkDoubleTapGesture(ev);
                 if (isDoubleTapping) {
                     handled |= gestureListener.onDoubleTapEvent(ev);
                 }
-                updateCurrDownEvent(ev);
+                currDownX = ev.getX();
+                currDownY = ev.getY();
+                currDownTime = ev.getEventTime();
                 pointerIndex1 = ev.findPointerIndex(ev.getPointerId(0));
                 return true;
             case MotionEvent.ACTION_POINTER_DOWN:
+                handled |= retractPrediction();
                 updateLastFocus();
                 spanConfigChanged();
                 pointerIndex2 = ev.findPointerIndex(ev.getPointerId(1));
+                touchPredictor.reset(currFocusX, currFocusY, ev.getEventTime());
                 break;
             case MotionEvent.ACTION_MOVE:
-                handled |= checkOnScroll(ev);
+                //the real motion goes under the prediction, which is put back on top after it
+                takeBackPrediction();
+                touchPredictor.predictFocus(currFocusX, currFocusY, ev.getEventTime());
+                if (checkOnScroll(ev)) {
+                    touchPredictor.applyFocus();
+                    handled = true;
+                }
                 updateLastFocus();
                 if (isDoubleTapping) {
                     handled |= gestureListener.onDoubleTapEvent(ev);
                 }
                 if (!inSingleFingerScroll) {
-                    handled |= checkOnScale(ev);
-                    handled |= checkOnRotation(ev);
+                    integrateSamples(ev);
+                    touchPredictor.predictScaleAndAngle(
+                            Math.abs(currSpan - initSpan) > SCALE_SPAN_SLOP ? scaleVelocity : 0,
+                            canRotate(ev) ? angleVelocity : 0);
+                    if (checkOnScale()) {
+                        touchPredictor.applyScale();
+                        handled = true;
+                    }
+                    if (checkOnRotation(ev)) {
+                        touchPredictor.applyDegrees();
+                        handled = true;
+                    }
                 } else {
                     spanConfigChanged();
                 }
                 prevSpan = currSpan;
+                applyPrediction();
                 break;
             case MotionEvent.ACTION_POINTER_UP:
+                handled |= retractPrediction();
                 isNewState4Rotation = true;
                 updateLastFocus();
                 spanConfigChanged();
+                touchPredictor.reset(currFocusX, currFocusY, ev.getEventTime());
                 break;
             case MotionEvent.ACTION_UP:
+                handled |= retractPrediction();
                 isNewState4Scroll = true;
                 isNewState4Rotation = true;
+                computeGestureVelocity(ev);
                 if (isDoubleTapping) {
                     handled |= gestureListener.onDoubleTapEvent(ev);
                     isDoubleTapping = false;
@@ -189,63 +255,171 @@ class GooglePhotosGestureDetector {
                     handled |= checkOnFlingGesture(ev);
                 }
                 handled |= gestureListener.onActionUp(ev);
-                updatePrevUpEvent(ev);
+                prevUpTime = ev.getEventTime();
+                hasPrevUp = true;
                 pointerIndex1 = INVALID_POINTER_INDEX;
                 pointerIndex2 = INVALID_POINTER_INDEX;
                 break;
             case MotionEvent.ACTION_CANCEL:
+                handled |= retractPrediction();
                 cancel();
                 break;
         }
         return handled;
     }
 
-    private boolean checkOnRotation(MotionEvent event) {
-        if (pointerIndex1 != INVALID_POINTER_INDEX && pointerIndex2 != INVALID_POINTER_INDEX && event.getPointerCount() > pointerIndex2) {
-            float nfX, nfY, nsX, nsY;
-
-            nsX = event.getX(pointerIndex1);
-            nsY = event.getY(pointerIndex1);
-            nfX = event.getX(pointerIndex2);
-            nfY = event.getY(pointerIndex2);
-            if (isNewState4Rotation) {
-                angle = 0;
-                isNewState4Rotation = false;
-            } else {
-                calculateAngleBetweenLines(fX, fY, sX, sY, nfX, nfY, nsX, nsY);
+    /**
+     * Walk the historical samples of a batched move event and then its current values, and sum
+     * them up into one scale factor and one rotation delta, so the listener is called once per
+     * event without losing the motion between the samples. The velocities are fed per sample.
+     * The translation needs no walk: the scale and rotation of every sample happen around the
+     * focus of that sample, so the moves between the samples add up to the move of the focus
+     * over the whole event.
+     */
+    private void integrateSamples(MotionEvent ev) {
+        final boolean rotatable = canRotate(ev);
+        final int historySize = ev.getHistorySize();
+        batchScale = 1;
+        angle = 0;
+        float span = prevSpan;
+        for (int h = 0; h <= historySize; h++) {
+            final int pos = h < historySize ? h : CURRENT_SAMPLE;
+            final long time = pos == CURRENT_SAMPLE ? ev.getEventTime() : ev.getHistoricalEventTime(pos);
+            final float sampleSpan = pos == CURRENT_SAMPLE ? currSpan : spanOf(ev, pos);
+            if (Math.abs(sampleSpan - initSpan) > SCALE_SPAN_SLOP) {
+                final float scaleFactor = span > 0 ? sampleSpan / span : 1;
+                batchScale *= scaleFactor;
+                updateScaleVelocity(scaleFactor, time);
+            }
+            span = sampleSpan;
+
+            if (rotatable) {
+                final float nsX = readSample(ev, pointerIndex1, pos, true);
+                final float nsY = readSample(ev, pointerIndex1, pos, false);
+                final float nfX = readSample(ev, pointerIndex2, pos, true);
+                final float nfY = readSample(ev, pointerIndex2, pos, false);
+                float delta = 0;
+                if (isNewState4Rotation) {
+                    isNewState4Rotation = false;
+                } else {
+                    delta = calculateAngleBetweenLines(fX, fY, sX, sY, nfX, nfY, nsX, nsY);
+                }
+                angle += delta;
+                fX = nfX;
+                fY = nfY;
+                sX = nsX;
+                sY = nsY;
+                updateAngleVelocity(delta, time);
             }
-            fX = nfX;
-            fY = nfY;
-            sX = nsX;
-            sY = nsY;
+        }
+    }
+
+    private static float readSample(MotionEvent ev, int pointerIndex, int pos, boolean x) {
+        if (pos == CURRENT_SAMPLE) {
+            return x ? ev.getX(pointerIndex) : ev.getY(pointerIndex);
+        }
+        return x ? ev.getHistoricalX(pointerIndex, pos) : ev.getHistoricalY(pointerIndex, pos);
+    }
+
+    private boolean canRotate(MotionEvent event) {
+        return pointerIndex1 != INVALID_POINTER_INDEX && pointerIndex2 != INVALID_POINTER_INDEX
+                && event.getPointerCount() > pointerIndex2;
+    }
+
+    private boolean checkOnRotation(MotionEvent event) {
+        if (canRotate(event)) {
             return gestureListener.onRotation(angle, currFocusX, currFocusY);
         }
         return false;
     }
 
-    private float calculateAngleBetweenLines(float fx1, float fy1, float fx2, float fy2,
-                                             float sx1, float sy1, float sx2, float sy2) {
+    private void updateAngleVelocity(float deltaDegree, long eventTime) {
+        long dt = eventTime - lastRotationTime;
+        if (dt > 0) {
+            angleVelocity = smoothVelocity(angleVelocity, deltaDegree * 1000f / dt);
+        }
+        lastRotationTime = eventTime;
+    }
+
+    private void updateScaleVelocity(float scaleFactor, long eventTime) {
+        long dt = eventTime - lastScaleTime;
+        if (dt > 0) {
+            scaleVelocity = smoothVelocity(scaleVelocity, (scaleFactor - 1) * 1000f / dt);
+        }
+        lastScaleTime = eventTime;
+    }
+
+    private static float smoothVelocity(float last, float current) {
+        return last * 0.4f + current * 0.6f;
+    }
+
+    private void computeGestureVelocity(MotionEvent ev) {
+        final int pointerId = ev.getPointerId(0);
+        velocityTracker.computeCurrentVelocity(1000, MAX_FLING_VELOCITY);
+        velocityX = velocityTracker.getXVelocity(pointerId);
+        velocityY = velocityTracker.getYVelocity(pointerId);
+
+        //the fingers rested before lifting
+        final long upTime = ev.getEventTime();
+        if (upTime - lastScaleTime > VELOCITY_STALE_TIME) {
+            scaleVelocity = 0;
+        }
+        if (upTime - lastRotationTime > VELOCITY_STALE_TIME) {
+            angleVelocity = 0;
+        }
+    }
+
+    /**
+     * @return the x velocity of the last gesture when the finger lifted, in pixels per second
+     */
+    public float getVelocityX() {
+        return velocityX;
+    }
+
+    /**
+     * @return the y velocity of the last gesture when the finger lifted, in pixels per second
+     */
+    public float getVelocityY() {
+        return velocityY;
+    }
+
+    /**
+     * @return the relative scale velocity of the last gesture when the fingers lifted, per second.
+     * Multiply by the current scale for the absolute one.
+     */
+    public float getScaleVelocity() {
+        return scaleVelocity;
+    }
+
+    /**
+     * @return the rotation velocity of the last gesture when the fingers lifted, in degrees per second
+     */
+    public float getAngleVelocity() {
+        return angleVelocity;
+    }
+
+    private static float calculateAngleBetweenLines(float fx1, float fy1, float fx2, float fy2,
+                                                    float sx1, float sy1, float sx2, float sy2) {
         return calculateAngleDelta(
                 (float) Math.toDegrees((float) Math.atan2((fy1 - fy2), (fx1 - fx2))),
                 (float) Math.toDegrees((float) Math.atan2((sy1 - sy2), (sx1 - sx2))));
     }
 
-    private float calculateAngleDelta(float angleFrom, float angleTo) {
-        angle = angleTo % 360.0f - angleFrom % 360.0f;
+    private static float calculateAngleDelta(float angleFrom, float angleTo) {
+        float delta = angleTo % 360.0f - angleFrom % 360.0f;
 
-        if (angle < -180.0f) {
-            angle += 360.0f;
-        } else if (angle > 180.0f) {
-            angle -= 360.0f;
+        if (delta < -180.0f) {
+            delta += 360.0f;
+        } else if (delta > 180.0f) {
+            delta -= 360.0f;
         }
 
-        return angle;
+        return delta;
     }
 
-    private boolean checkOnScale(MotionEvent ev) {
+    private boolean checkOnScale() {
         if (Math.abs(currSpan - initSpan) > SCALE_SPAN_SLOP) {
-            float scaleFactor = prevSpan > 0 ? currSpan / prevSpan : 1;
-            return gestureListener.onScale(scaleFactor, currFocusX, currFocusY);
+            return gestureListener.onScale(batchScale, currFocusX, currFocusY);
         } else {
             return false;
         }
@@ -259,28 +433,103 @@ class GooglePhotosGestureDetector {
         float absDy = Math.abs(scrollY);
         if ((absDx >= 1 || absDy >= 1)) {
 
-            if (isNewState4Scroll || gestureHandler.hasMessages(MSG_SCROLL)) {
+            final long eventTime = ev.getEventTime();
+            if (isNewState4Scroll || (inSingleFingerScroll && eventTime <= scrollStateDeadline)) {
                 isNewState4Scroll = false;
                 int count = ev.getPointerCount();
                 if (count > 1) {
                     inSingleFingerScroll = false;
-                    gestureHandler.removeMessages(MSG_SCROLL);
                 } else {
+                    //every single finger move within the window extends it
                     inSingleFingerScroll = true;
-                    gestureHandler.sendEmptyMessageDelayed(MSG_SCROLL, SCROLL_STATE_CHANGE_WINDOW);
+                    scrollStateDeadline = eventTime + SCROLL_STATE_CHANGE_WINDOW;
                 }
             }
 
             if (inSingleFingerScroll) {
-                return gestureListener.onSingleFingerScroll(currentDownEvent, ev, scrollX, scrollY);
+                return gestureListener.onSingleFingerScroll(ev, scrollX, scrollY);
             } else {
-                return gestureListener.onMultiFingerScroll(currentDownEvent, ev, scrollX, scrollY);
+                return gestureListener.onMultiFingerScroll(ev, scrollX, scrollY);
             }
         } else {
             return false;
         }
     }
 
+    /**
+     * Take back the predicted motion which has been applied and drop the offsets, before the
+     * fingers change or lift.
+     */
+    private boolean retractPrediction() {
+        final boolean predicted = hasPrediction;
+        takeBackPrediction();
+        touchPredictor.retract();
+        return predicted;
+    }
+
+    private void takeBackPrediction() {
+        if (hasPrediction) {
+            hasPrediction = false;
+            //dropped if a transition owns the image now, it sets the whole transform anyway
+            gestureListener.onPredictionTransform(predictionInverse);
+        }
+    }
+
+    //the predicted scale and rotation pivot on the current focus, which the offset then moves
+    private void applyPrediction() {
+        if (!touchPredictor.hasOffsets()) {
+            return;
+        }
+        final float scale = touchPredictor.getOffsetScale();
+        prediction.setPivotTransform(scale, scale, touchPredictor.getOffsetDegrees(),
+                currFocusX, currFocusY,
+                currFocusX + touchPredictor.getOffsetX(), currFocusY + touchPredictor.getOffsetY());
+        if (prediction.invert(predictionInverse)) {
+            hasPrediction = gestureListener.onPredictionTransform(prediction);
+        }
+    }
+
+    /**
+     * Predict the gesture ahead of the touch events, so the image keeps up with the fingers
+     * instead of trailing them by the frames between the events and the screen. The prediction
+     * is clamped, and taken back when the fingers change or lift.
+     *
+     * @param leadTime how far ahead to predict in milliseconds, about two frame intervals is
+     *                 a good start, 0 to disable
+     */
+    public void setPredictionLeadTime(long leadTime) {
+        touchPredictor.setLeadTime(leadTime);
+    }
+
+    public long getPredictionLeadTime() {
+        return touchPredictor.getLeadTime();
+    }
+
+    /**
+     * @return how many predictions have been checked against where the fingers really were
+     */
+    public int getPredictionErrorCount() {
+        return touchPredictor.getErrorCount();
+    }
+
+    /**
+     * @return the mean distance in pixels between the predicted and the real focus of the fingers
+     */
+    public float getPredictionMeanError() {
+        return touchPredictor.getMeanError();
+    }
+
+    /**
+     * @return the max distance in pixels between the predicted and the real focus of the fingers
+     */
+    public float getPredictionMaxError() {
+        return touchPredictor.getMaxError();
+    }
+
+    public void resetPredictionErrors() {
+        touchPredictor.resetErrors();
+    }
+
     private void spanConfigChanged() {
         initSpan = prevSpan = currSpan;
     }
@@ -290,56 +539,63 @@ class GooglePhotosGestureDetector {
         lastFocusY = currFocusY;
     }
 
-    private void checkDoubleTapGesture(@Nullable MotionEvent prevDown,
-                                       @Nullable MotionEvent prevUp,
-                                       @NonNull MotionEvent currDown) {
-        boolean hasTabMsg = gestureHandler.hasMessages(MSG_TAP);
-        if (prevDown != null && prevUp != null
-                && hasTabMsg
-                && isConsideredDoubleTap(prevDown, prevUp, currDown)) {
+    private void checkDoubleTapGesture(@NonNull MotionEvent currDown) {
+        final long downTime = currDown.getEventTime();
+        if (hasPrevUp
+                && tapWindowOpen
+                && downTime - tapWindowStartTime < DOUBLE_TAP_TIMEOUT
+                && isConsideredDoubleTap(currDownX, currDownY, prevUpTime,
+                currDown.getX(), currDown.getY(), downTime, DOUBLE_TAP_SLOP)) {
             // This is a second tap
             isDoubleTapping = true;
         } else {
             // This is a first tap
-            gestureHandler.sendEmptyMessageDelayed(MSG_TAP, DOUBLE_TAP_TIMEOUT);
+            tapWindowStartTime = downTime;
+            tapWindowOpen = true;
         }
     }
 
-    private boolean isConsideredDoubleTap(MotionEvent firstDown,
-                                          MotionEvent firstUp,
-                                          MotionEvent secondDown) {
-        final long deltaTime = secondDown.getEventTime() - firstUp.getEventTime();
+    /**
+     * @param firstDownX     x of the down event of the first tap
+     * @param firstDownY     y of the down event of the first tap
+     * @param firstUpTime    the event time of the up event of the first tap
+     * @param secondDownX    x of the down event of the second tap
+     * @param secondDownY    y of the down event of the second tap
+     * @param secondDownTime the event time of the down event of the second tap
+     * @param slop           the max distance between the two downs
+     * @return true if the second down makes a double tap with the first tap
+     */
+    static boolean isConsideredDoubleTap(float firstDownX, float firstDownY, long firstUpTime,
+                                         float secondDownX, float secondDownY, long secondDownTime,
+                                         float slop) {
+        final long deltaTime = secondDownTime - firstUpTime;
         if (deltaTime > DOUBLE_TAP_TIMEOUT || deltaTime < DOUBLE_TAP_MIN_TIME) {
             return false;
         }
 
-        int deltaX = (int) firstDown.getX() - (int) secondDown.getX();
-        int deltaY = (int) firstDown.getY() - (int) secondDown.getY();
-        return Math.hypot(deltaX, deltaY) < DOUBLE_TAP_SLOP;
-    }
-
-    private void updatePrevUpEvent(MotionEvent ev) {
-        if (previousUpEvent != null) {
-            previousUpEvent.recycle();
-        }
-        previousUpEvent = MotionEvent.obtain(ev);
+        int deltaX = (int) firstDownX - (int) secondDownX;
+        int deltaY = (int) firstDownY - (int) secondDownY;
+        return Math.hypot(deltaX, deltaY) < slop;
     }
 
     private void cancel() {
-        velocityTracker.recycle();
-        velocityTracker = null;
-        gestureHandler.removeMessages(MSG_TAP);
+        velocityTracker.clear();
+        tapWindowOpen = false;
         isNewState4Scroll = true;
         isDoubleTapping = false;
         pointerIndex1 = INVALID_POINTER_INDEX;
         pointerIndex2 = INVALID_POINTER_INDEX;
     }
 
-    private void updateCurrDownEvent(MotionEvent ev) {
-        if (currentDownEvent != null) {
-            currentDownEvent.recycle();
+    /**
+     * Give back the velocity tracker, the detector obtains a new one on the next event if it is
+     * used again.
+     */
+    public void release() {
+        if (velocityTracker != null) {
+            velocityTracker.recycle();
+            velocityTracker = null;
         }
-        currentDownEvent = MotionEvent.obtain(ev);
     }
 
     private void calculateCurrFocusAndSpan(MotionEvent ev) {
@@ -381,14 +637,31 @@ class GooglePhotosGestureDetector {
         currSpan = (float) Math.hypot(spanX, spanY);
     }
 
+    //the span of a historical sample of a move event, whose pointers are all down
+    private static float spanOf(MotionEvent ev, int pos) {
+        final int count = ev.getPointerCount();
+        float sumX = 0, sumY = 0;
+        for (int i = 0; i < count; i++) {
+            sumX += ev.getHistoricalX(i, pos);
+            sumY += ev.getHistoricalY(i, pos);
+        }
+        final float focusX = sumX / count;
+        final float focusY = sumY / count;
+
+        float devSumX = 0, devSumY = 0;
+        for (int i = 0; i < count; i++) {
+            devSumX += Math.abs(ev.getHistoricalX(i, pos) - focusX);
+            devSumY += Math.abs(ev.getHistoricalY(i, pos) - focusY);
+        }
+        return (float) Math.hypot(devSumX / count * 2, devSumY / count * 2);
+    }
+
     private boolean checkOnFlingGesture(MotionEvent ev) {
-        final VelocityTracker velocityTracker = this.velocityTracker;
-        final int pointerId = ev.getPointerId(0);
-        velocityTracker.computeCurrentVelocity(1000, MAX_FLING_VELOCITY);
-        final float velocityY = velocityTracker.getYVelocity(pointerId);
-        final float velocityX = velocityTracker.getXVelocity(pointerId);
+        //computed on ACTION_UP by computeGestureVelocity
+        final float velocityY = this.velocityY;
+        final float velocityX = this.velocityX;
         if ((Math.abs(velocityY) >= MIN_FLING_VELOCITY) || (Math.abs(velocityX) >= MIN_FLING_VELOCITY)) {
-            return gestureListener.onFling(currentDownEvent, ev, velocityX, velocityY);
+            return gestureListener.onFling(ev, velocityX, velocityY);
         } else {
             return false;
         }
@@ -18,9 +18,7 @@ package io.github.xyzxqs.libs.xphotoview;
 
 import android.graphics.Matrix;
 import android.graphics.drawable.Drawable;
-import android.support.v4.view.ViewCompat;
-import android.view.View;
-import android.view.animation.AccelerateDecelerateInterpolator;
+import android.support.annotation.Nullable;
 import android.view.animation.Interpolator;
 import android.widget.ImageView;
 
@@ -28,12 +26,6 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 
-import static io.github.xyzxqs.libs.xphotoview.MatrixUtils.getMatrixAngle;
-import static io.github.xyzxqs.libs.xphotoview.MatrixUtils.getMatrixScaleX;
-import static io.github.xyzxqs.libs.xphotoview.MatrixUtils.getMatrixScaleY;
-import static io.github.xyzxqs.libs.xphotoview.MatrixUtils.getMatrixTranslateX;
-import static io.github.xyzxqs.libs.xphotoview.MatrixUtils.getMatrixTranslateY;
-
 /**
  * Animate the {@link Matrix} that is applied to the view's drawable when it is drawn.
  * Allows custom scaling, rotating translation, but perspective distortion.
@@ -67,6 +59,10 @@ class ImageMatrixAnimator {
         }
     }
 
+    static final int MODE_TWEEN = 0;
+    static final int MODE_SPRING = 1;
+    static final int MODE_FLING = 2;
+
     private ImageMatrixAnimator() {
     }
 
@@ -100,12 +96,32 @@ class ImageMatrixAnimator {
         //impl by subclass
     }
 
+    /**
+     * Keep running on a new drawable of the view whose intrinsic size is the old one divided by
+     * (sx, sy), see {@link MatrixImageView#onImageDrawableSwapped(float, float)}.
+     */
+    void rescaleDrawable(float sx, float sy) {
+        //impl by subclass
+    }
+
+    /**
+     * @return the fling state if this is a fling animation, to read where it comes to rest
+     */
+    @Nullable
+    MatrixFling getFling() {
+        //impl by subclass
+        return null;
+    }
+
     public static class Builder {
 
-        private static Interpolator defaultInterpolator = new AccelerateDecelerateInterpolator();
+        private static Interpolator defaultInterpolator = MatrixTween.ACCELERATE_DECELERATE;
 
         private WeakReference<ImageView> viewRef;
 
+        private final MatrixValues matrixValues = new MatrixValues();
+        private final AffineMatrix viewMatrix = new AffineMatrix();
+
         private float fromDegrees;
         private float toDegrees;
         private Interpolator angleInterpolator;
@@ -137,27 +153,94 @@ class ImageMatrixAnimator {
 
         private long durationMs = 200;
 
+        private float calculatedTx;
+        private float calculatedTy;
+
+        private int mode = MODE_TWEEN;
+        private float stiffness = MatrixSpring.DEFAULT_STIFFNESS;
+        private float angleVelocity;
+        private float scaleXVelocity;
+        private float scaleYVelocity;
+        private float transXVelocity;
+        private float transYVelocity;
+
+        private float flingMinX;
+        private float flingMaxX;
+        private float flingMinY;
+        private float flingMaxY;
+        private float flingOverX;
+        private float flingOverY;
+
+        private ImageMatrixAnimatorReal animator;
+
+        private FrameClock frameClock;
+
         public Builder(ImageView imageView) {
             viewRef = new WeakReference<>(imageView);
             if (imageView.getScaleType() != ImageView.ScaleType.MATRIX) {
                 throw new IllegalStateException("the image scaleType must be ScaleType.MATRIX");
             }
+            reset();
+        }
+
+        /**
+         * Reset this builder to the current image matrix of the view, so one builder (and the
+         * {@link ImageMatrixAnimator} it builds) can be reused for every animation of the view
+         * without allocation.
+         *
+         * @return this {@link ImageMatrixAnimator.Builder}.
+         */
+        public Builder reset() {
+            ImageView imageView = viewRef.get();
+            if (imageView == null) {
+                return this;
+            }
 
             Drawable d = imageView.getDrawable();
             if (d != null) {
                 animCenterX = d.getIntrinsicWidth() / 2;
                 animCenterY = d.getIntrinsicHeight() / 2;
+            } else {
+                animCenterX = animCenterY = 0;
             }
 
-            Matrix matrix = new Matrix(imageView.getImageMatrix());
-            fromDegrees = toDegrees = MatrixUtils.getMatrixAngle(matrix);
-            fromScaleX = toScaleX = getMatrixScaleX(matrix);
-            fromScaleY = toScaleY = getMatrixScaleY(matrix);
-
-            float[] txty = calculateTxTy();
-            fromTranslateX = toTranslateX = txty[0];
-            fromTranslateY = toTranslateY = txty[1];
-
+            readImageTransform(imageView, viewMatrix);
+            MatrixValues values = viewMatrix.decompose(matrixValues);
+            fromDegrees = toDegrees = values.getAngle();
+            fromScaleX = toScaleX = values.getScaleX();
+            fromScaleY = toScaleY = values.getScaleY();
+
+            ftxIsSet = ftyIsSet = ttxIsSet = ttyIsSet = false;
+            calculateTxTy();
+            fromTranslateX = toTranslateX = calculatedTx;
+            fromTranslateY = toTranslateY = calculatedTy;
+
+            angleInterpolator = null;
+            scaleInterpolator = null;
+            transXInterpolator = null;
+            transYInterpolator = null;
+            repeatCount = 1;
+            durationMs = 200;
+
+            stiffness = MatrixSpring.DEFAULT_STIFFNESS;
+            if (animator != null && animator.isRunning() && animator.mode == MODE_SPRING) {
+                //the interrupted spring hands its velocity over, so the motion stays continuous
+                MatrixSpring spring = animator.spring;
+                angleVelocity = spring.getAngleVelocity();
+                scaleXVelocity = spring.getScaleXVelocity();
+                scaleYVelocity = spring.getScaleYVelocity();
+                transXVelocity = spring.getTranslateXVelocity();
+                transYVelocity = spring.getTranslateYVelocity();
+            } else if (animator != null && animator.isRunning() && animator.mode == MODE_FLING) {
+                MatrixFling fling = animator.fling;
+                angleVelocity = scaleXVelocity = scaleYVelocity = 0;
+                transXVelocity = fling.getVelocityX();
+                transYVelocity = fling.getVelocityY();
+            } else {
+                angleVelocity = scaleXVelocity = scaleYVelocity = transXVelocity = transYVelocity = 0;
+            }
+            mode = MODE_TWEEN;
+            return this;
         }
 
         /**
@@ -169,64 +252,57 @@ class ImageMatrixAnimator {
          * @return this {@link ImageMatrixAnimator.Builder}.
          */
         public Builder setAnimCenter(float x, float y) {
-            Matrix matrix = new Matrix(viewRef.get().getImageMatrix());
+            AffineMatrix matrix = viewMatrix;
+            readImageTransform(viewRef.get(), matrix);
 
-            float angle = getMatrixAngle(matrix);
+            float angle = matrix.decompose(matrixValues).getAngle();
 
             matrix.postRotate(-angle, x, y);
 
-            float tx = getMatrixTranslateX(matrix);
-            float ty = getMatrixTranslateY(matrix);
+            float tx = matrix.values[AffineMatrix.TRANS_X];
+            float ty = matrix.values[AffineMatrix.TRANS_Y];
 
             animCenterX = (x - tx) / fromScaleX;
             animCenterY = (y - ty) / fromScaleY;
-            float[] txty = calculateTxTy();
+            calculateTxTy();
             if (!ftxIsSet) {
-                fromTranslateX = txty[0];
+                fromTranslateX = calculatedTx;
             }
 
             if (!ftyIsSet) {
-                fromTranslateY = txty[1];
+                fromTranslateY = calculatedTy;
             }
 
             if (!ttxIsSet) {
-                toTranslateX = txty[0];
+                toTranslateX = calculatedTx;
             }
 
             if (!ttyIsSet) {
-                toTranslateY = txty[1];
+                toTranslateY = calculatedTy;
             }
             return this;
         }
 
-        private float[] calculateTxTy() {
-            Matrix matrix = new Matrix(viewRef.get().getImageMatrix());
-            float[] animCenter = {animCenterX, animCenterY};
+        //where the anim center is on the view now, with the from rotate and from scale
+        private void calculateTxTy() {
+            AffineMatrix matrix = viewMatrix;
+            readImageTransform(viewRef.get(), matrix);
+            float tx = matrix.values[AffineMatrix.TRANS_X];
+            float ty = matrix.values[AffineMatrix.TRANS_Y];
 
-            float[] center = new float[2];
-
-            Matrix m = new Matrix();
-
-            float sx = getMatrixScaleX(m);
-            float sy = getMatrixScaleY(m);
-            m.mapPoints(center, animCenter);
-            m.postScale(fromScaleX / sx, fromScaleY / sy, center[0], center[1]);
-
-            float tx0 = getMatrixTranslateX(m);
-            float ty0 = getMatrixTranslateY(m);
-
-            m.mapPoints(center, animCenter);
-            m.postRotate(fromDegrees, center[0], center[1]);
-
-            float tx1 = getMatrixTranslateX(m);
-            float ty1 = getMatrixTranslateY(m);
-
-            float dx = tx1 - tx0;
-            float dy = ty1 - ty0;
+            matrix.setPivotTransform(fromScaleX, fromScaleY, fromDegrees, 0, 0, tx, ty);
+            calculatedTx = matrix.mapX(animCenterX, animCenterY);
+            calculatedTy = matrix.mapY(animCenterX, animCenterY);
+        }
 
-            float transX = getMatrixTranslateX(matrix) + animCenterX * fromScaleX - dx;
-            float transY = getMatrixTranslateY(matrix) + animCenterY * fromScaleY - dy;
-            return new float[]{transX, transY};
+        //the image matrix of a MatrixImageView lags behind its transform inside a transaction, an
+        //animation started from a touch event must start from the deltas of that event
+        private static void readImageTransform(ImageView imageView, AffineMatrix out) {
+            if (imageView instanceof MatrixImageView) {
+                out.set(((MatrixImageView) imageView).getImageTransform());
+            } else {
+                out.setMatrix(imageView.getImageMatrix());
+            }
         }
 
         public Builder fromScaleX(float scaleX) {
@@ -293,6 +369,86 @@ class ImageMatrixAnimator {
             return this;
         }
 
+        /**
+         * Animate with critically damped springs instead of the duration and interpolators.
+         *
+         * @param stiffness the spring stiffness, higher settles faster,
+         *                  {@link MatrixSpring#DEFAULT_STIFFNESS} by default.
+         * @return this {@link ImageMatrixAnimator.Builder}.
+         */
+        public Builder spring(float stiffness) {
+            mode = MODE_SPRING;
+            this.stiffness = stiffness;
+            return this;
+        }
+
+        /**
+         * Fling the image position (the left top of the image in the view) with the given velocity,
+         * the scale and rotate angle stay the same. The image is kept within the min and max by a
+         * spring, with at most the over scroll distance beyond them.
+         *
+         * @param velocityX pixels per second
+         * @param velocityY pixels per second
+         * @return this {@link ImageMatrixAnimator.Builder}.
+         */
+        public Builder fling(float velocityX, float velocityY,
+                             float minX, float maxX, float minY, float maxY,
+                             float overX, float overY) {
+            mode = MODE_FLING;
+            transXVelocity = velocityX;
+            transYVelocity = velocityY;
+            flingMinX = minX;
+            flingMaxX = maxX;
+            flingMinY = minY;
+            flingMaxY = maxY;
+            flingOverX = overX;
+            flingOverY = overY;
+
+            //fling the drawable's (0, 0)
+            animCenterX = animCenterY = 0;
+            calculateTxTy();
+            fromTranslateX = toTranslateX = calculatedTx;
+            fromTranslateY = toTranslateY = calculatedTy;
+            return this;
+        }
+
+        /**
+         * Set the start velocity of the translation (of the anim center) for the spring, such as the
+         * finger velocity when the gesture ends.
+         *
+         * @param velocityX pixels per second
+         * @param velocityY pixels per second
+         * @return this {@link ImageMatrixAnimator.Builder}.
+         */
+        public Builder translateVelocity(float velocityX, float velocityY) {
+            transXVelocity = velocityX;
+            transYVelocity = velocityY;
+            return this;
+        }
+
+        /**
+         * Set the start velocity of the scale for the spring.
+         *
+         * @param velocity scale per second
+         * @return this {@link ImageMatrixAnimator.Builder}.
+         */
+        public Builder scaleVelocity(float velocity) {
+            scaleXVelocity = velocity;
+            scaleYVelocity = velocity;
+            return this;
+        }
+
+        /**
+         * Set the start velocity of the rotate angle for the spring.
+         *
+         * @param velocity degrees per second
+         * @return this {@link ImageMatrixAnimator.Builder}.
+         */
+        public Builder angleVelocity(float velocity) {
+            angleVelocity = velocity;
+            return this;
+        }
+
         public Builder setAngleInterpolator(Interpolator angleInterpolator) {
             this.angleInterpolator = angleInterpolator;
             return this;
@@ -313,6 +469,30 @@ class ImageMatrixAnimator {
             return this;
         }
 
+        /**
+         * Set the clock that drives the animation frames, it is kept by {@link #reset()}.
+         * The default is {@link FrameClock#getDefault()}.
+         *
+         * @return this {@link ImageMatrixAnimator.Builder}.
+         */
+        Builder setFrameClock(FrameClock frameClock) {
+            this.frameClock = frameClock;
+            return this;
+        }
+
+        /**
+         * @return the animator built by this builder, or null if never built
+         */
+        ImageMatrixAnimator getAnimator() {
+            return animator;
+        }
+
+        /**
+         * Build the animator of this builder. The same {@link ImageMatrixAnimator} instance is returned
+         * for every build, a running one is cancelled and all its listeners are removed first.
+         *
+         * @return the {@link ImageMatrixAnimator} of this builder.
+         */
         public ImageMatrixAnimator build() {
 
             if (angleInterpolator == null) {
@@ -331,207 +511,230 @@ class ImageMatrixAnimator {
                 transYInterpolator = defaultInterpolator;
             }
 
-            return new ImageMatrixAnimatorReal(this);
+            if (animator == null) {
+                animator = new ImageMatrixAnimatorReal(this);
+            } else {
+                animator.set(this);
+            }
+            return animator;
         }
     }
 
 
-    private static class ImageMatrixAnimatorReal extends ImageMatrixAnimator implements Runnable {
+    private static class ImageMatrixAnimatorReal extends ImageMatrixAnimator implements FrameClock.FrameCallback {
         private static final String TAG = ImageMatrixAnimator.class.getSimpleName();
 
+        private static final long NANOS_PER_MS = 1000000;
+
+        private static final int EVENT_START = 0;
+        private static final int EVENT_END = 1;
+        private static final int EVENT_CANCEL = 2;
+        private static final int EVENT_REPEAT = 3;
+
         private final List<AnimatorListener> listenerList = new ArrayList<>();
 
         private final Matrix matrix = new Matrix();
+        private final AffineMatrix frameMatrix = new AffineMatrix();
 
         private final WeakReference<ImageView> viewRef;
 
-        private final float fromDegrees;
-        private final float toDegrees;
+        private final MatrixTween tween = new MatrixTween();
+        private final MatrixSpring spring = new MatrixSpring();
+        private final MatrixFling fling = new MatrixFling();
 
-        private final Interpolator angleInterpolator;
+        private int mode;
 
-        private final float fromScaleX;
-        private final float fromScaleY;
-        private final float toScaleX;
-        private final float toScaleY;
+        //increased by every set(Builder), so a listener that rebuilds stops the old notification
+        private int generation;
 
-        private final Interpolator scaleInterpolator;
+        private FrameClock frameClock;
 
-        private final float fromTranslateX;
-        private final float fromTranslateY;
-        private final float toTranslateX;
-        private final float toTranslateY;
-
-        private final Interpolator transXInterpolator;
-        private final Interpolator transYInterpolator;
-
-        private long startTime;
-
-        private float durationMs;
+        //the first frame at or after this time starts the animation
+        private long startDelayUntilNanos;
 
         private int repeat;
 
         private boolean isStarted = false;
 
-        private final float[] animCenter = new float[2];
-        private final float[] center = new float[2];
+        //posted to the frame clock and not yet ended or cancelled
+        private boolean isScheduled = false;
 
         ImageMatrixAnimatorReal(Builder builder) {
             super();
             this.viewRef = builder.viewRef;
+            set(builder);
+        }
+
+        void set(Builder builder) {
+            if (isScheduled) {
+                cancel();
+            }
+            listenerList.clear();
+            isStarted = false;
+
+            this.frameClock = builder.frameClock != null ? builder.frameClock : FrameClock.getDefault();
+
+            MatrixTween tween = this.tween;
+            tween.fromDegrees = builder.fromDegrees;
+            tween.toDegrees = builder.toDegrees;
+            tween.animCenterX = builder.animCenterX;
+            tween.animCenterY = builder.animCenterY;
 
-            this.fromDegrees = builder.fromDegrees;
-            this.toDegrees = builder.toDegrees;
-            this.animCenter[0] = builder.animCenterX;
-            this.animCenter[1] = builder.animCenterY;
+            tween.angleInterpolator = builder.angleInterpolator;
 
-            this.angleInterpolator = builder.angleInterpolator;
+            tween.fromScaleX = builder.fromScaleX;
+            tween.fromScaleY = builder.fromScaleY;
+            tween.toScaleX = builder.toScaleX;
+            tween.toScaleY = builder.toScaleY;
 
-            this.fromScaleX = builder.fromScaleX;
-            this.fromScaleY = builder.fromScaleY;
-            this.toScaleX = builder.toScaleX;
-            this.toScaleY = builder.toScaleY;
+            tween.scaleInterpolator = builder.scaleInterpolator;
 
-            this.scaleInterpolator = builder.scaleInterpolator;
+            tween.fromTranslateX = builder.fromTranslateX;
+            tween.fromTranslateY = builder.fromTranslateY;
+            tween.toTranslateX = builder.toTranslateX;
+            tween.toTranslateY = builder.toTranslateY;
 
-            this.fromTranslateX = builder.fromTranslateX;
-            this.fromTranslateY = builder.fromTranslateY;
-            this.toTranslateX = builder.toTranslateX;
-            this.toTranslateY = builder.toTranslateY;
+            tween.transXInterpolator = builder.transXInterpolator;
+            tween.transYInterpolator = builder.transYInterpolator;
 
-            this.transXInterpolator = builder.transXInterpolator;
-            this.transYInterpolator = builder.transYInterpolator;
+            tween.durationNanos = builder.durationMs * NANOS_PER_MS;
 
             this.repeat = builder.repeatCount;
 
-            this.durationMs = builder.durationMs;
+            this.generation++;
+            this.mode = builder.mode;
+            if (mode == MODE_FLING) {
+                MatrixFling fling = this.fling;
+                fling.scaleX = builder.fromScaleX;
+                fling.scaleY = builder.fromScaleY;
+                fling.degrees = builder.fromDegrees;
+                fling.setX(builder.fromTranslateX, builder.transXVelocity,
+                        builder.flingMinX, builder.flingMaxX, builder.flingOverX);
+                fling.setY(builder.fromTranslateY, builder.transYVelocity,
+                        builder.flingMinY, builder.flingMaxY, builder.flingOverY);
+            } else if (mode == MODE_SPRING) {
+                MatrixSpring spring = this.spring;
+                spring.setStiffness(builder.stiffness);
+                spring.animCenterX = builder.animCenterX;
+                spring.animCenterY = builder.animCenterY;
+                spring.setAngle(builder.fromDegrees, builder.toDegrees, builder.angleVelocity);
+                spring.setScale(builder.fromScaleX, builder.fromScaleY, builder.toScaleX, builder.toScaleY,
+                        builder.scaleXVelocity, builder.scaleYVelocity);
+                spring.setTranslate(builder.fromTranslateX, builder.fromTranslateY,
+                        builder.toTranslateX, builder.toTranslateY,
+                        builder.transXVelocity, builder.transYVelocity);
+            }
+        }
+
+        @Override
+        void rescaleDrawable(float sx, float sy) {
+            if (mode == MODE_FLING) {
+                fling.rescaleDrawable(sx, sy);
+            } else if (mode == MODE_SPRING) {
+                spring.rescaleDrawable(sx, sy);
+            } else {
+                tween.rescaleDrawable(sx, sy);
+            }
+        }
+
+        @Nullable
+        @Override
+        MatrixFling getFling() {
+            return mode == MODE_FLING ? fling : null;
         }
 
         @Override
-        public void run() {
+        public void doFrame(long frameTimeNanos) {
+            if (!isScheduled) {
+                //cancelled by an earlier callback of the same frame
+                return;
+            }
             ImageView view = viewRef.get();
             if (view == null) {
+                isScheduled = false;
                 return;
             }
 
             if (!isStarted && repeat > 0) {
+                if (frameTimeNanos < startDelayUntilNanos) {
+                    frameClock.postFrameCallback(this);
+                    return;
+                }
                 isStarted = true;
-                startTime = System.currentTimeMillis();
+                switch (mode) {
+                    case MODE_SPRING:
+                        spring.start(frameTimeNanos);
+                        break;
+                    case MODE_FLING:
+                        fling.start(frameTimeNanos);
+                        break;
+                    default:
+                        tween.start(frameTimeNanos);
+                        break;
+                }
                 repeat--;
-                notifyListeners(new Callback() {
-                    @Override
-                    public void action(AnimatorListener listener) {
-                        listener.onAnimationStart(ImageMatrixAnimatorReal.this);
-                    }
-                });
+                notifyListeners(EVENT_START);
             }
 
-            long currentTime = System.currentTimeMillis();
-
-            float t = Math.min(durationMs, currentTime - startTime);
-
-            float fraction = t / durationMs;
-
-            matrix.reset();
-
-            float transX = getInterpolation(transXInterpolator, fromTranslateX, toTranslateX, fraction);
-            float transY = getInterpolation(transYInterpolator, fromTranslateY, toTranslateY, fraction);
-
-            float scaleX = getInterpolation(scaleInterpolator, fromScaleX, toScaleX, fraction);
-            float scaleY = getInterpolation(scaleInterpolator, fromScaleY, toScaleY, fraction);
-
-            float angle = getInterpolation(angleInterpolator, fromDegrees, toDegrees, fraction);
-
-            float sx = getMatrixScaleX(matrix);
-            float sy = getMatrixScaleY(matrix);
-            matrix.mapPoints(center, animCenter);
-            matrix.postScale(scaleX / sx, scaleY / sy, center[0], center[1]);
-
-            float tx0 = getMatrixTranslateX(matrix);
-            float ty0 = getMatrixTranslateY(matrix);
-
-            matrix.mapPoints(center, animCenter);
-
-            matrix.postRotate(angle, center[0], center[1]);
-
-            float tx1 = getMatrixTranslateX(matrix);
-            float ty1 = getMatrixTranslateY(matrix);
-
-            //offset x/y = laid out(0,0) to laid out center + to target center - to target(0, 0) + offset case by rotation
-            float tx = (animCenter[0] - tx0) + (transX - (center[0] - tx0)) - (center[0] - tx0) + (tx1 - tx0);
-            float ty = (animCenter[1] - ty0) + (transY - (center[1] - ty0)) - (center[1] - ty0) + (ty1 - ty0);
-
-            matrix.postTranslate(tx - tx1, ty - ty1);
+            boolean finished;
+            switch (mode) {
+                case MODE_SPRING:
+                    finished = spring.computeFrame(frameTimeNanos, frameMatrix);
+                    break;
+                case MODE_FLING:
+                    finished = fling.computeFrame(frameTimeNanos, frameMatrix);
+                    break;
+                default:
+                    finished = tween.computeFrame(frameTimeNanos, frameMatrix);
+                    break;
+            }
 
-            view.setImageMatrix(matrix);
+            view.setImageMatrix(frameMatrix.getMatrix(matrix));
 
-            if (t < durationMs) {
-                ViewCompat.postOnAnimation(view, this);
+            if (!finished) {
+                frameClock.postFrameCallback(this);
             } else if (repeat > 0) {
                 isStarted = false;
-                ViewCompat.postOnAnimation(view, this);
+                frameClock.postFrameCallback(this);
 
-                notifyListeners(new Callback() {
-                    @Override
-                    public void action(AnimatorListener listener) {
-                        listener.onAnimationRepeat(ImageMatrixAnimatorReal.this);
-                    }
-                });
+                notifyListeners(EVENT_REPEAT);
             } else {
                 //make it can start again
                 isStarted = false;
+                isScheduled = false;
                 repeat = 1;
 
-                notifyListeners(new Callback() {
-                    @Override
-                    public void action(AnimatorListener listener) {
-                        listener.onAnimationEnd(ImageMatrixAnimatorReal.this);
-                    }
-                });
-            }
-        }
-
-        private float getInterpolation(Interpolator interpolator, float start, float end, float fraction) {
-            if (start == end || fraction == 1) {
-                return end;
-            } else {
-                return start + (end - start) * interpolator.getInterpolation(fraction);
+                notifyListeners(EVENT_END);
             }
         }
 
         @Override
         public void start() {
-            View v = viewRef.get();
-            if (v != null) {
-                ViewCompat.postOnAnimation(v, this);
-            }
+            startDelayed(0);
         }
 
         @Override
         public void startDelayed(long delayMillis) {
-            View v = viewRef.get();
-            if (v != null) {
-                ViewCompat.postOnAnimationDelayed(v, this, delayMillis);
+            if (viewRef.get() != null) {
+                //the clock never runs a callback twice per frame, so the matrix is written once
+                isScheduled = true;
+                startDelayUntilNanos = frameClock.nanoTime() + delayMillis * NANOS_PER_MS;
+                frameClock.postFrameCallback(this);
             }
         }
 
         @Override
         public boolean isRunning() {
-            return System.currentTimeMillis() - startTime < durationMs;
+            return isScheduled;
         }
 
         @Override
         public void cancel() {
-            View v = viewRef.get();
-            if (v != null) {
-                v.removeCallbacks(this);
-
-                notifyListeners(new Callback() {
-                    @Override
-                    public void action(AnimatorListener listener) {
-                        listener.onAnimationCancel(ImageMatrixAnimatorReal.this);
-                    }
-                });
+            frameClock.removeFrameCallback(this);
+            if (isScheduled) {
+                isScheduled = false;
+                isStarted = false;
+                notifyListeners(EVENT_CANCEL);
             }
         }
 
@@ -551,20 +754,43 @@ class ImageMatrixAnimator {
             listenerList.clear();
         }
 
-        private void notifyListeners(Callback callback) {
+        //indexed loop without iterator or callback allocation, listeners may remove themselves
+        private void notifyListeners(int event) {
             boolean containNullEntries = false;
-            for (AnimatorListener listener : listenerList) {
+            final int generation = this.generation;
+            for (int i = 0; i < listenerList.size() && generation == this.generation; i++) {
+                AnimatorListener listener = listenerList.get(i);
                 if (listener != null) {
-                    callback.action(listener);
+                    dispatch(listener, event);
+                    if (i < listenerList.size() && listenerList.get(i) != listener) {
+                        i--;
+                    }
                 } else {
                     containNullEntries = true;
                 }
             }
-            if (containNullEntries) {
+            if (containNullEntries && generation == this.generation) {
                 removeNullEntries(listenerList);
             }
         }
 
+        private void dispatch(AnimatorListener listener, int event) {
+            switch (event) {
+                case EVENT_START:
+                    listener.onAnimationStart(this);
+                    break;
+                case EVENT_END:
+                    listener.onAnimationEnd(this);
+                    break;
+                case EVENT_CANCEL:
+                    listener.onAnimationCancel(this);
+                    break;
+                case EVENT_REPEAT:
+                    listener.onAnimationRepeat(this);
+                    break;
+            }
+        }
+
         private void removeNullEntries(List<AnimatorListener> list) {
             // Clean up null entries
             for (int i = list.size() - 1; i >= 0; i--) {
@@ -573,9 +799,5 @@ class ImageMatrixAnimator {
                 }
             }
         }
-
-        private interface Callback {
-            void action(AnimatorListener listener);
-        }
     }
 }
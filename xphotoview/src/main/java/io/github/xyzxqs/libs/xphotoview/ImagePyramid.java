@@ -0,0 +1,119 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+/**
+ * The power of two levels of detail of a tiled image, from the full resolution (sample size 1) to
+ * the base level which is always in memory.
+ * <p>
+ * The level follows the image scale with hysteresis: a finer level is picked as soon as the current
+ * one would be magnified, but a coarser level only when the image is scaled down clearly below it,
+ * so a pinch around a level boundary does not thrash the tiles.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class ImagePyramid {
+
+    /**
+     * How far below the boundary of the next coarser level the image scale has to go before
+     * switching to it.
+     */
+    static final float HYSTERESIS = 0.2f;
+
+    private final int baseSampleSize;
+    private int finestSampleSize = 1;
+    private int sampleSize;
+
+    /**
+     * @param baseSampleSize the power of two sample size of the coarsest level
+     */
+    ImagePyramid(int baseSampleSize) {
+        if (baseSampleSize < 1 || (baseSampleSize & (baseSampleSize - 1)) != 0) {
+            throw new IllegalArgumentException("baseSampleSize must be a power of two: " + baseSampleSize);
+        }
+        this.baseSampleSize = baseSampleSize;
+        this.sampleSize = baseSampleSize;
+    }
+
+    int getBaseSampleSize() {
+        return baseSampleSize;
+    }
+
+    /**
+     * @return the sample size of the current level
+     */
+    int getSampleSize() {
+        return sampleSize;
+    }
+
+    boolean isBaseLevel() {
+        return sampleSize == baseSampleSize;
+    }
+
+    /**
+     * Limit the finest level, such as under memory pressure.
+     *
+     * @param finestSampleSize the power of two sample size of the finest level that can be picked,
+     *                         clamped to the base level
+     */
+    void setFinestSampleSize(int finestSampleSize) {
+        this.finestSampleSize = Math.max(1, Math.min(finestSampleSize, baseSampleSize));
+        sampleSize = Math.max(sampleSize, this.finestSampleSize);
+    }
+
+    int getFinestSampleSize() {
+        return finestSampleSize;
+    }
+
+    int getLevelCount() {
+        return Integer.numberOfTrailingZeros(baseSampleSize) + 1;
+    }
+
+    /**
+     * Pick the level for the given image scale.
+     *
+     * @param imageScale the current scale of the image, view pixels per image pixel
+     * @return the sample size of the picked level
+     */
+    int select(float imageScale) {
+        if (imageScale <= 0) {
+            return sampleSize;
+        }
+        final int ideal = Math.max(finestSampleSize,
+                Math.min(ImageTile.sampleSizeFor(imageScale), baseSampleSize));
+        if (ideal < sampleSize) {
+            sampleSize = ideal;
+        } else {
+            while (sampleSize < ideal && sampleSize * 2 * imageScale * (1 + HYSTERESIS) <= 1) {
+                sampleSize *= 2;
+            }
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Drop to the base level, such as in the open and dismiss transitions where the image is
+     * small and moving.
+     *
+     * @return the base sample size
+     */
+    int selectBase() {
+        sampleSize = baseSampleSize;
+        return sampleSize;
+    }
+}
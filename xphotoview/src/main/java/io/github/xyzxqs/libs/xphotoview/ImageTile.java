@@ -0,0 +1,143 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+
+/**
+ * A region of a large image, decoded with a sample size.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class ImageTile {
+
+    /**
+     * The decoded size of a tile side, in bitmap pixels.
+     */
+    static final int TILE_SIZE = 512;
+
+    final int sampleSize;
+    final int column;
+    final int row;
+
+    /**
+     * True for the tile of the whole image at the base level, which is decoded before any other.
+     */
+    final boolean base;
+
+    /**
+     * The region of the tile in the full image, in image pixels.
+     */
+    final int left;
+    final int top;
+    final int right;
+    final int bottom;
+
+    //guarded by the lock of TileDecodeScheduler, the smaller the sooner
+    float priority;
+
+    //only touched on the main thread, the decode thread posts the bitmap back
+    Bitmap bitmap;
+
+    //requested ahead of the viewport and not visible yet, only touched on the main thread
+    boolean prefetched = false;
+
+    //set on the main thread when the tile is no longer wanted, checked by the decode thread
+    volatile boolean cancelled = false;
+
+    ImageTile(int sampleSize, int column, int row, int imageWidth, int imageHeight) {
+        this.sampleSize = sampleSize;
+        this.column = column;
+        this.row = row;
+        this.base = false;
+        final int span = TILE_SIZE * sampleSize;
+        left = column * span;
+        top = row * span;
+        right = Math.min(imageWidth, (column + 1) * span);
+        bottom = Math.min(imageHeight, (row + 1) * span);
+    }
+
+    private ImageTile(int sampleSize, int imageWidth, int imageHeight) {
+        this.sampleSize = sampleSize;
+        this.column = 0;
+        this.row = 0;
+        this.base = true;
+        left = 0;
+        top = 0;
+        right = imageWidth;
+        bottom = imageHeight;
+    }
+
+    /**
+     * @return the tile of the whole image at the given sample size
+     */
+    static ImageTile base(int sampleSize, int imageWidth, int imageHeight) {
+        return new ImageTile(sampleSize, imageWidth, imageHeight);
+    }
+
+    boolean isLoaded() {
+        return bitmap != null;
+    }
+
+    boolean is(int sampleSize, int column, int row) {
+        return !base && this.sampleSize == sampleSize && this.column == column && this.row == row;
+    }
+
+    /**
+     * @return the squared distance from the center of this tile to the point, in image pixels
+     */
+    float distanceSquaredTo(float x, float y) {
+        final float dx = (left + right) / 2f - x;
+        final float dy = (top + bottom) / 2f - y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Cancel the pending decode and detach the decoded bitmap, on the main thread.
+     *
+     * @return the decoded bitmap, for the owner to cache
+     */
+    @Nullable
+    Bitmap release() {
+        cancelled = true;
+        Bitmap b = bitmap;
+        bitmap = null;
+        return b;
+    }
+
+    /**
+     * @return the largest power of two sample size that keeps at least one bitmap pixel per view
+     * pixel at the given image scale (view pixels per image pixel)
+     */
+    static int sampleSizeFor(float imageScale) {
+        int sampleSize = 1;
+        if (imageScale > 0) {
+            while (sampleSize * 2 * imageScale <= 1) {
+                sampleSize *= 2;
+            }
+        }
+        return sampleSize;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageTile{sample=" + sampleSize + ", " + column + "x" + row
+                + ", [" + left + "," + top + "][" + right + "," + bottom + "]}";
+    }
+}
@@ -0,0 +1,107 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.widget.ImageView;
+
+/**
+ * Owns the only active {@link ImageMatrixAnimator} of a view.
+ * <p>
+ * A new animation is built from the current image matrix and replaces (retargets) the running one,
+ * unless the running one has a higher priority, so there is never more than one animator writing
+ * the image matrix of the view in a frame.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class MatrixAnimationCoordinator {
+
+    /**
+     * Settle animations and fling after a gesture, such as fit to view and zoom by double tap.
+     */
+    static final int PRIORITY_SETTLE = 0;
+
+    /**
+     * Open and dismiss transitions, can not be replaced by settle animations.
+     */
+    static final int PRIORITY_TRANSITION = 1;
+
+    private final ImageMatrixAnimator.Builder builder;
+
+    private int activePriority = PRIORITY_SETTLE;
+
+    MatrixAnimationCoordinator(@NonNull ImageView imageView) {
+        builder = new ImageMatrixAnimator.Builder(imageView);
+    }
+
+    void setFrameClock(@NonNull FrameClock frameClock) {
+        builder.setFrameClock(frameClock);
+    }
+
+    /**
+     * Get the builder for a new animation, reset to the current image matrix. The running animation
+     * will be cancelled when the new one is built.
+     *
+     * @param priority {@link #PRIORITY_SETTLE} or {@link #PRIORITY_TRANSITION}
+     * @return the builder, or null if an animation with higher priority is running
+     */
+    @Nullable
+    ImageMatrixAnimator.Builder newAnimation(int priority) {
+        if (isAnimating() && priority < activePriority) {
+            return null;
+        }
+        activePriority = priority;
+        return builder.reset();
+    }
+
+    boolean isAnimating() {
+        ImageMatrixAnimator animator = builder.getAnimator();
+        return animator != null && animator.isRunning();
+    }
+
+    boolean isAnimating(int priority) {
+        return isAnimating() && activePriority == priority;
+    }
+
+    /**
+     * Rescale the running animation for a new drawable whose intrinsic size is the old one divided
+     * by (sx, sy), so it goes on without a restart.
+     */
+    void rescaleDrawable(float sx, float sy) {
+        if (isAnimating()) {
+            builder.getAnimator().rescaleDrawable(sx, sy);
+        }
+    }
+
+    /**
+     * Cancel the running animation if its priority is not higher than the given one.
+     *
+     * @return true if nothing is running now
+     */
+    boolean cancel(int priority) {
+        if (!isAnimating()) {
+            return true;
+        }
+        if (priority >= activePriority) {
+            builder.getAnimator().cancel();
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Float precision fling of the image translation, the third mode of {@link ImageMatrixAnimator}
+ * next to {@link MatrixTween} and {@link MatrixSpring}.
+ * <p>
+ * Each axis slows down with exponential friction, v(t) = v0 * e^(-k * t). When it reaches the
+ * bound it hands its velocity to a critically damped spring pulling back to the bound, which is
+ * stiff enough to keep the overscroll within the given distance. Everything is a closed form of
+ * the frame time.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class MatrixFling {
+
+    /**
+     * The friction coefficient, per second. A fling travels velocity / friction pixels.
+     */
+    static final float DEFAULT_FRICTION = 4f;
+
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double MIN_OMEGA = Math.sqrt(MatrixSpring.DEFAULT_STIFFNESS);
+
+    private static final float REST_VELOCITY = 20f;
+    private static final float REST_DISPLACEMENT = 0.5f;
+
+    float scaleX = 1;
+    float scaleY = 1;
+    float degrees;
+
+    private final Axis axisX = new Axis();
+    private final Axis axisY = new Axis();
+
+    private long startTimeNanos;
+
+    /**
+     * Set the fling of the image position, the image left top in the view.
+     *
+     * @param startX    the start x
+     * @param velocityX the start x velocity, pixels per second
+     * @param minX      the min x at rest
+     * @param maxX      the max x at rest
+     * @param overX     how far the image can go beyond the min and max
+     */
+    void setX(float startX, float velocityX, float minX, float maxX, float overX) {
+        axisX.init(startX, velocityX, minX, maxX, overX);
+    }
+
+    void setY(float startY, float velocityY, float minY, float maxY, float overY) {
+        axisY.init(startY, velocityY, minY, maxY, overY);
+    }
+
+    /**
+     * Rescale for a drawable whose intrinsic size is the old one divided by (sx, sy), the fling
+     * moves the drawable origin which stays the same.
+     */
+    void rescaleDrawable(float sx, float sy) {
+        scaleX *= sx;
+        scaleY *= sy;
+    }
+
+    void start(long frameTimeNanos) {
+        startTimeNanos = frameTimeNanos;
+    }
+
+    /**
+     * @return the x where the fling comes to rest
+     */
+    float getFinalX() {
+        return axisX.getFinal();
+    }
+
+    /**
+     * @return the y where the fling comes to rest
+     */
+    float getFinalY() {
+        return axisY.getFinal();
+    }
+
+    float getVelocityX() {
+        return axisX.velocity;
+    }
+
+    float getVelocityY() {
+        return axisY.velocity;
+    }
+
+    /**
+     * Compute the image matrix at the frame time.
+     *
+     * @return true if both axes are at rest
+     */
+    boolean computeFrame(long frameTimeNanos, @NonNull AffineMatrix out) {
+        final double t = Math.max(0, frameTimeNanos - startTimeNanos) / NANOS_PER_SECOND;
+        final boolean xAtRest = axisX.compute(t);
+        final boolean yAtRest = axisY.compute(t);
+        out.setPivotTransform(scaleX, scaleY, degrees, 0, 0, axisX.value, axisY.value);
+        return xAtRest && yAtRest;
+    }
+
+    private static final class Axis {
+        private float start;
+        private float startVelocity;
+        private float over;
+
+        //the friction phase ends when the bound is hit, then the spring phase starts
+        private double hitTime;
+        private float bound;
+        private float hitDisplacement;
+        private float hitVelocity;
+        private double omega;
+
+        private float value;
+        private float velocity;
+
+        void init(float start, float velocity, float min, float max, float over) {
+            this.start = start;
+            this.startVelocity = velocity;
+            this.over = Math.max(over, REST_DISPLACEMENT);
+            this.value = start;
+            this.velocity = velocity;
+
+            if (start < min || start > max) {
+                //already over scrolled, pull back from the start
+                bound = start < min ? min : max;
+                hitTime = 0;
+                hitDisplacement = start - bound;
+                hitVelocity = velocity;
+                this.over = Math.max(this.over, Math.abs(hitDisplacement));
+            } else {
+                final float end = start + velocity / DEFAULT_FRICTION;
+                if (end > max || end < min) {
+                    bound = end > max ? max : min;
+                    //solve start + v0 / k * (1 - e^(-k * t)) = bound
+                    final double remain = 1 - (bound - start) * DEFAULT_FRICTION / velocity;
+                    hitTime = -Math.log(remain) / DEFAULT_FRICTION;
+                    hitDisplacement = 0;
+                    hitVelocity = (float) (velocity * remain);
+                } else {
+                    hitTime = Double.POSITIVE_INFINITY;
+                }
+            }
+            //stiff enough that the overshoot v / (w * e) stays within over
+            omega = Math.max(MIN_OMEGA, Math.abs(hitVelocity) / (Math.E * this.over));
+        }
+
+        float getFinal() {
+            return hitTime == Double.POSITIVE_INFINITY ? start + startVelocity / DEFAULT_FRICTION : bound;
+        }
+
+        boolean compute(double t) {
+            if (t < hitTime) {
+                final double decay = Math.exp(-DEFAULT_FRICTION * t);
+                value = (float) (start + startVelocity / DEFAULT_FRICTION * (1 - decay));
+                velocity = (float) (startVelocity * decay);
+                if (Math.abs(velocity) < REST_VELOCITY) {
+                    velocity = 0;
+                    return true;
+                }
+                return false;
+            }
+
+            final double tau = t - hitTime;
+            final double decay = Math.exp(-omega * tau);
+            final double b = hitVelocity + omega * hitDisplacement;
+            double x = (hitDisplacement + b * tau) * decay;
+            final double v = (b - omega * (hitDisplacement + b * tau)) * decay;
+            x = Math.max(-over, Math.min(over, x));
+            if (Math.abs(x) < REST_DISPLACEMENT && Math.abs(v) < REST_VELOCITY) {
+                value = bound;
+                velocity = 0;
+                return true;
+            }
+            value = (float) (bound + x);
+            velocity = (float) v;
+            return false;
+        }
+    }
+}
@@ -21,17 +21,12 @@ import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.support.annotation.CallSuper;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v7.widget.AppCompatImageView;
 import android.util.AttributeSet;
 import android.util.Log;
 
-import static io.github.xyzxqs.libs.xphotoview.MatrixUtils.getMatrixAngle;
-import static io.github.xyzxqs.libs.xphotoview.MatrixUtils.getMatrixScaleX;
-import static io.github.xyzxqs.libs.xphotoview.MatrixUtils.getMatrixScaleY;
-import static io.github.xyzxqs.libs.xphotoview.MatrixUtils.getMatrixTranslateX;
-import static io.github.xyzxqs.libs.xphotoview.MatrixUtils.getMatrixTranslateY;
-
 /**
  * @author xyzxqs (xyzxqs@gmail.com)
  */
@@ -51,8 +46,18 @@ class MatrixImageView extends AppCompatImageView {
 
     private final Matrix imageMatrix = new Matrix();
 
+    //the source of truth of image matrix, only bridged to the native matrix in applyImageTransform()
+    private final AffineMatrix imageTransform = new AffineMatrix();
+
+    //decomposed once per matrix change, all the image getters read from it
+    private final MatrixValues imageValues = new MatrixValues();
+
     private final RectF imageBound = new RectF();
 
+    //scratch of getVisibleImageRect(RectF)
+    private final AffineMatrix inverseTransform = new AffineMatrix();
+    private final float[] visibleCorners = new float[8];
+
     private float[] initImageCorners;
     private float[] initImageCenter;
 
@@ -64,6 +69,9 @@ class MatrixImageView extends AppCompatImageView {
 
     protected boolean hasLaidOut = false;
 
+    private int transactionDepth = 0;
+    private boolean transformPending = false;
+
     public MatrixImageView(Context context) {
         this(context, null);
     }
@@ -88,24 +96,74 @@ class MatrixImageView extends AppCompatImageView {
             imageViewWidth = right - left;
             imageViewHeight = bottom - top;
 
-            drawableIntrinsicWidth = d.getIntrinsicWidth() + getPaddingLeft() + getPaddingRight();
-            drawableIntrinsicHeight = d.getIntrinsicHeight() + getPaddingTop() + getPaddingBottom();
-
-            imageBound.set(0, 0, drawableIntrinsicWidth, drawableIntrinsicHeight);
-            initImageCorners = new float[]{
-                    imageBound.left, imageBound.top,
-                    imageBound.right, imageBound.top,
-                    imageBound.right, imageBound.bottom,
-                    imageBound.left, imageBound.bottom
-            };
-            initImageCenter = new float[]{
-                    imageBound.centerX(), imageBound.centerY()
-            };
+            setDrawableIntrinsicSize(d);
             hasLaidOut = true;
             onImageLaidOut();
         }
     }
 
+    private void setDrawableIntrinsicSize(Drawable d) {
+        drawableIntrinsicWidth = d.getIntrinsicWidth() + getPaddingLeft() + getPaddingRight();
+        drawableIntrinsicHeight = d.getIntrinsicHeight() + getPaddingTop() + getPaddingBottom();
+
+        imageBound.set(0, 0, drawableIntrinsicWidth, drawableIntrinsicHeight);
+        initImageCorners = new float[]{
+                imageBound.left, imageBound.top,
+                imageBound.right, imageBound.top,
+                imageBound.right, imageBound.bottom,
+                imageBound.left, imageBound.bottom
+        };
+        initImageCenter = new float[]{
+                imageBound.centerX(), imageBound.centerY()
+        };
+    }
+
+    /**
+     * Set the drawable. Once the image has been laid out, a drawable of another intrinsic size is
+     * swapped in place: the image matrix is rescaled so the new drawable covers exactly where the
+     * old one was shown, without a new layout. This is meant for a low resolution placeholder
+     * followed by the full resolution image of the same aspect ratio.
+     */
+    @CallSuper
+    @Override
+    public void setImageDrawable(@Nullable Drawable drawable) {
+        super.setImageDrawable(drawable);
+        if (hasLaidOut && drawable != null) {
+            swapImageDrawable(drawable);
+        }
+    }
+
+    private void swapImageDrawable(Drawable d) {
+        final float oldWidth = drawableIntrinsicWidth - getPaddingLeft() - getPaddingRight();
+        final float oldHeight = drawableIntrinsicHeight - getPaddingTop() - getPaddingBottom();
+        final int newWidth = d.getIntrinsicWidth();
+        final int newHeight = d.getIntrinsicHeight();
+        if (newWidth <= 0 || newHeight <= 0 || (newWidth == oldWidth && newHeight == oldHeight)) {
+            return;
+        }
+        if (Math.abs(oldWidth * newHeight / (oldHeight * newWidth) - 1) > 0.01f) {
+            Log.w(TAG, "swap drawable of another aspect ratio, the image will be stretched");
+        }
+
+        final float sx = oldWidth / newWidth;
+        final float sy = oldHeight / newHeight;
+        imageTransform.preScale(sx, sy);
+        setDrawableIntrinsicSize(d);
+        onImageDrawableSwapped(sx, sy);
+        applyImageTransform();
+    }
+
+    /**
+     * Called when a drawable of another intrinsic size is swapped in after the image laid out, the
+     * new intrinsic size is the old one divided by (sx, sy). The image scales are multiplied by
+     * (sx, sy) right after this, so rescale anything kept in the old drawable's units.
+     */
+    @CallSuper
+    protected void onImageDrawableSwapped(float sx, float sy) {
+        imageScaleX *= sx;
+        imageScaleY *= sy;
+    }
+
     @CallSuper
     protected void onImageLaidOut() {
     }
@@ -126,10 +184,50 @@ class MatrixImageView extends AppCompatImageView {
     @CallSuper
     @Override
     public void setImageMatrix(Matrix matrix) {
-        super.setImageMatrix(matrix);
-        imageMatrix.set(matrix);
-        onImageMatrixUpdated(imageMatrix);
+        imageTransform.setMatrix(matrix);
+        applyImageTransform();
+    }
+
+    private void applyImageTransform() {
+        //the getters and image points are always up to date, even in a transaction
+        imageTransform.decompose(imageValues);
         updateImagePoints();
+        if (transactionDepth > 0) {
+            transformPending = true;
+        } else {
+            commitImageTransform();
+        }
+    }
+
+    private void commitImageTransform() {
+        transformPending = false;
+        super.setImageMatrix(imageTransform.getMatrix(imageMatrix));
+        onImageMatrixUpdated(imageMatrix);
+    }
+
+    /**
+     * Begin a transaction of image transform updates, such as all the scale, rotate and translate
+     * produced by one touch event. Until the matching {@link #commitTransaction()}, the updates are
+     * only applied to the image getters, {@link #imageCorners} and {@link #imageCenter}. The image
+     * matrix of the view, the invalidation and {@link #onImageMatrixUpdated(Matrix)} happen once when
+     * the transaction is committed. Transactions can be nested.
+     */
+    public void beginTransaction() {
+        transactionDepth++;
+    }
+
+    /**
+     * Commit the transaction began by {@link #beginTransaction()}, the pending updates are applied
+     * as a single image matrix update when the outermost transaction is committed.
+     */
+    public void commitTransaction() {
+        if (transactionDepth == 0) {
+            throw new IllegalStateException("commitTransaction() without beginTransaction()");
+        }
+        transactionDepth--;
+        if (transactionDepth == 0 && transformPending) {
+            commitImageTransform();
+        }
     }
 
     @CallSuper
@@ -208,8 +306,8 @@ class MatrixImageView extends AppCompatImageView {
     @CallSuper
     protected void postTranslate(float deltaX, float deltaY) {
         if (deltaX != 0 || deltaY != 0) {
-            imageMatrix.postTranslate(deltaX, deltaY);
-            setImageMatrix(imageMatrix);
+            imageTransform.postTranslate(deltaX, deltaY);
+            applyImageTransform();
         }
 
     }
@@ -217,34 +315,52 @@ class MatrixImageView extends AppCompatImageView {
     @CallSuper
     protected void postScale(float deltaScale, float px, float py) {
         if (deltaScale != 0) {
-            imageMatrix.postScale(deltaScale, deltaScale, px, py);
-            setImageMatrix(imageMatrix);
+            imageTransform.postScale(deltaScale, deltaScale, px, py);
+            applyImageTransform();
         }
     }
 
     @CallSuper
     protected void postScale(float deltaScaleX, float deltaScaleY, float px, float py) {
         if (deltaScaleX != 0 && deltaScaleY != 0) {
-            imageMatrix.postScale(deltaScaleX, deltaScaleY, px, py);
-            setImageMatrix(imageMatrix);
+            imageTransform.postScale(deltaScaleX, deltaScaleY, px, py);
+            applyImageTransform();
         }
     }
 
     @CallSuper
     protected void postRotate(float deltaDegrees, float px, float py) {
         if (deltaDegrees != 0) {
-            imageMatrix.postRotate(deltaDegrees, px, py);
-            setImageMatrix(imageMatrix);
+            imageTransform.postRotate(deltaDegrees, px, py);
+            applyImageTransform();
+        }
+    }
+
+    /**
+     * Apply the transform after the image transform, which is transform = delta * transform.
+     */
+    @CallSuper
+    void postTransform(@NonNull AffineMatrix delta) {
+        if (!delta.isIdentity()) {
+            imageTransform.postConcat(delta);
+            applyImageTransform();
         }
     }
 
+    /**
+     * @return the image transform, read only, change it by the post methods
+     */
+    AffineMatrix getImageTransform() {
+        return imageTransform;
+    }
+
     /**
      * Get the image drawable's (not this view itself) scaleX
      *
      * @return scaleX
      */
     public final float getImageScaleX() {
-        return getMatrixScaleX(imageMatrix);
+        return imageValues.getScaleX();
     }
 
     /**
@@ -253,7 +369,7 @@ class MatrixImageView extends AppCompatImageView {
      * @return scaleY
      */
     public final float getImageScaleY() {
-        return getMatrixScaleY(imageMatrix);
+        return imageValues.getScaleY();
     }
 
     /**
@@ -262,7 +378,7 @@ class MatrixImageView extends AppCompatImageView {
      * @return rotate angle
      */
     public final float getImageAngle() {
-        return getMatrixAngle(imageMatrix);
+        return imageValues.getAngle();
     }
 
     /**
@@ -271,7 +387,7 @@ class MatrixImageView extends AppCompatImageView {
      * @return translateX
      */
     public final float getImageTranslateX() {
-        return getMatrixTranslateX(imageMatrix);
+        return imageValues.getTranslateX();
     }
 
     /**
@@ -280,13 +396,59 @@ class MatrixImageView extends AppCompatImageView {
      * @return translateY
      */
     public final float getImageTranslateY() {
-        return getMatrixTranslateY(imageMatrix);
+        return imageValues.getTranslateY();
+    }
+
+    /**
+     * Get the region of the drawable which is visible in this view, in drawable coordinates.
+     *
+     * @param out the visible region to write into
+     * @return false if no drawable is visible
+     */
+    protected boolean getVisibleImageRect(RectF out) {
+        return getVisibleImageRect(0, 0, out);
+    }
+
+    /**
+     * Get the region of the drawable which would be visible in this view if the image were
+     * translated by (dx, dy), in drawable coordinates.
+     *
+     * @param dx  the translation in x, in view pixels
+     * @param dy  the translation in y, in view pixels
+     * @param out the visible region to write into
+     * @return false if no drawable would be visible
+     */
+    protected boolean getVisibleImageRect(float dx, float dy, RectF out) {
+        Drawable d = getDrawable();
+        if (d == null || !imageTransform.invert(inverseTransform)) {
+            out.setEmpty();
+            return false;
+        }
+        final float left = -getPaddingLeft() - dx;
+        final float top = -getPaddingTop() - dy;
+        final float right = left + getWidth();
+        final float bottom = top + getHeight();
+        visibleCorners[0] = left;
+        visibleCorners[1] = top;
+        visibleCorners[2] = right;
+        visibleCorners[3] = top;
+        visibleCorners[4] = right;
+        visibleCorners[5] = bottom;
+        visibleCorners[6] = left;
+        visibleCorners[7] = bottom;
+        inverseTransform.mapPoints(visibleCorners, visibleCorners);
+
+        out.set(visibleCorners[0], visibleCorners[1], visibleCorners[0], visibleCorners[1]);
+        for (int i = 2; i < 8; i += 2) {
+            out.union(visibleCorners[i], visibleCorners[i + 1]);
+        }
+        return out.intersect(0, 0, d.getIntrinsicWidth(), d.getIntrinsicHeight());
     }
 
     private void updateImagePoints() {
         if (hasLaidOut) {
-            imageMatrix.mapPoints(imageCorners, initImageCorners);
-            imageMatrix.mapPoints(imageCenter, initImageCenter);
+            imageTransform.mapPoints(imageCorners, initImageCorners);
+            imageTransform.mapPoints(imageCenter, initImageCenter);
         }
     }
 }
@@ -0,0 +1,179 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The physics based counterpart of {@link MatrixTween}: rotate angle, scale and translation (of the
+ * anim center) each follow a critically damped spring towards the target, starting with the given
+ * velocities. There is no fixed duration, the spring ends when every channel is at rest.
+ * <p>
+ * With unit mass and damping ratio 1 the displacement has the closed form
+ * <pre>
+ * x(t) = (x0 + (v0 + w * x0) * t) * e^(-w * t), w = sqrt(stiffness)
+ * </pre>
+ * so a frame only depends on the frame time and can be resumed at any point with its velocity.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class MatrixSpring {
+
+    static final float DEFAULT_STIFFNESS = 1600f;
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private static final int ANGLE = 0;
+    private static final int SCALE_X = 1;
+    private static final int SCALE_Y = 2;
+    private static final int TRANS_X = 3;
+    private static final int TRANS_Y = 4;
+    private static final int CHANNELS = 5;
+
+    //rest thresholds of displacement and velocity (per second) of each channel
+    private static final float[] REST_DISPLACEMENT = {0.1f, 0.0005f, 0.0005f, 0.5f, 0.5f};
+    private static final float[] REST_VELOCITY = {4f, 0.02f, 0.02f, 20f, 20f};
+
+    float animCenterX;
+    float animCenterY;
+
+    private final float[] from = new float[CHANNELS];
+    private final float[] to = new float[CHANNELS];
+    private final float[] fromVelocity = new float[CHANNELS];
+
+    private final float[] value = new float[CHANNELS];
+    private final float[] velocity = new float[CHANNELS];
+
+    private double omega = Math.sqrt(DEFAULT_STIFFNESS);
+
+    private long startTimeNanos;
+
+    void setStiffness(float stiffness) {
+        omega = Math.sqrt(stiffness);
+    }
+
+    void setAngle(float fromDegrees, float toDegrees, float velocity) {
+        setChannel(ANGLE, fromDegrees, toDegrees, velocity);
+    }
+
+    void setScale(float fromScaleX, float fromScaleY, float toScaleX, float toScaleY,
+                  float velocityX, float velocityY) {
+        setChannel(SCALE_X, fromScaleX, toScaleX, velocityX);
+        setChannel(SCALE_Y, fromScaleY, toScaleY, velocityY);
+    }
+
+    void setTranslate(float fromX, float fromY, float toX, float toY, float velocityX, float velocityY) {
+        setChannel(TRANS_X, fromX, toX, velocityX);
+        setChannel(TRANS_Y, fromY, toY, velocityY);
+    }
+
+    private void setChannel(int channel, float from, float to, float velocity) {
+        this.from[channel] = from;
+        this.to[channel] = to;
+        this.fromVelocity[channel] = velocity;
+        this.value[channel] = from;
+        this.velocity[channel] = velocity;
+    }
+
+    /**
+     * Rescale the scale channels and the anim center for a drawable whose intrinsic size is the old
+     * one divided by (sx, sy), the motion is linear in them so the spring goes on seamlessly.
+     */
+    void rescaleDrawable(float sx, float sy) {
+        rescaleChannel(SCALE_X, sx);
+        rescaleChannel(SCALE_Y, sy);
+        animCenterX /= sx;
+        animCenterY /= sy;
+    }
+
+    private void rescaleChannel(int channel, float scale) {
+        from[channel] *= scale;
+        to[channel] *= scale;
+        fromVelocity[channel] *= scale;
+        value[channel] *= scale;
+        velocity[channel] *= scale;
+    }
+
+    void start(long frameTimeNanos) {
+        startTimeNanos = frameTimeNanos;
+    }
+
+    /**
+     * Compute the image matrix at the frame time.
+     *
+     * @return true if all the channels are at rest, the frame is then exactly the target
+     */
+    boolean computeFrame(long frameTimeNanos, @NonNull AffineMatrix out) {
+        final double t = Math.max(0, frameTimeNanos - startTimeNanos) / NANOS_PER_SECOND;
+        final double decay = Math.exp(-omega * t);
+
+        boolean atRest = true;
+        for (int i = 0; i < CHANNELS; i++) {
+            final double x0 = from[i] - to[i];
+            final double v0 = fromVelocity[i];
+            final double b = v0 + omega * x0;
+            final double x = (x0 + b * t) * decay;
+            final double v = (b - omega * (x0 + b * t)) * decay;
+            value[i] = (float) (to[i] + x);
+            velocity[i] = (float) v;
+            if (Math.abs(x) > REST_DISPLACEMENT[i] || Math.abs(v) > REST_VELOCITY[i]) {
+                atRest = false;
+            }
+        }
+
+        if (atRest) {
+            for (int i = 0; i < CHANNELS; i++) {
+                value[i] = to[i];
+                velocity[i] = 0;
+            }
+        }
+
+        out.setPivotTransform(value[SCALE_X], value[SCALE_Y], value[ANGLE],
+                animCenterX, animCenterY, value[TRANS_X], value[TRANS_Y]);
+        return atRest;
+    }
+
+    /**
+     * @return the angle velocity at the last computed frame, in degrees per second
+     */
+    float getAngleVelocity() {
+        return velocity[ANGLE];
+    }
+
+    /**
+     * @return the scaleX velocity at the last computed frame, per second
+     */
+    float getScaleXVelocity() {
+        return velocity[SCALE_X];
+    }
+
+    float getScaleYVelocity() {
+        return velocity[SCALE_Y];
+    }
+
+    /**
+     * @return the velocity of the anim center at the last computed frame, in pixels per second
+     */
+    float getTranslateXVelocity() {
+        return velocity[TRANS_X];
+    }
+
+    float getTranslateYVelocity() {
+        return velocity[TRANS_Y];
+    }
+}
@@ -0,0 +1,117 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.support.annotation.NonNull;
+import android.view.animation.Interpolator;
+
+/**
+ * The frame math of an {@link ImageMatrixAnimator}: rotate angle, scale and translation (of the anim
+ * center) interpolated over a duration, computed from the frame time only. Pure java, so it can
+ * be stepped by a {@link VirtualFrameClock} off device.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class MatrixTween {
+
+    /**
+     * The same curve as {@link android.view.animation.AccelerateDecelerateInterpolator}.
+     */
+    static final Interpolator ACCELERATE_DECELERATE = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return (float) (Math.cos((input + 1) * Math.PI) / 2.0f) + 0.5f;
+        }
+    };
+
+    float fromDegrees;
+    float toDegrees;
+    Interpolator angleInterpolator;
+
+    float animCenterX;
+    float animCenterY;
+
+    float fromScaleX;
+    float fromScaleY;
+    float toScaleX;
+    float toScaleY;
+    Interpolator scaleInterpolator;
+
+    float fromTranslateX;
+    float fromTranslateY;
+    float toTranslateX;
+    float toTranslateY;
+    Interpolator transXInterpolator;
+    Interpolator transYInterpolator;
+
+    long durationNanos;
+
+    private long startTimeNanos;
+
+    /**
+     * Rescale the scales and the anim center for a drawable whose intrinsic size is the old one
+     * divided by (sx, sy), so the computed frames show the drawable at the same place.
+     */
+    void rescaleDrawable(float sx, float sy) {
+        fromScaleX *= sx;
+        toScaleX *= sx;
+        fromScaleY *= sy;
+        toScaleY *= sy;
+        animCenterX /= sx;
+        animCenterY /= sy;
+    }
+
+    void start(long frameTimeNanos) {
+        startTimeNanos = frameTimeNanos;
+    }
+
+    /**
+     * Compute the image matrix at the frame time.
+     *
+     * @return true if the frame time reached the end of the duration
+     */
+    boolean computeFrame(long frameTimeNanos, @NonNull AffineMatrix out) {
+        long t = Math.max(0, Math.min(durationNanos, frameTimeNanos - startTimeNanos));
+
+        float fraction = durationNanos > 0 ? (float) ((double) t / durationNanos) : 1;
+
+        float transX = getInterpolation(transXInterpolator, fromTranslateX, toTranslateX, fraction);
+        float transY = getInterpolation(transYInterpolator, fromTranslateY, toTranslateY, fraction);
+
+        float scaleX = getInterpolation(scaleInterpolator, fromScaleX, toScaleX, fraction);
+        float scaleY = getInterpolation(scaleInterpolator, fromScaleY, toScaleY, fraction);
+
+        float angle = getInterpolation(angleInterpolator, fromDegrees, toDegrees, fraction);
+
+        //scale and rotate around the anim center, then move the anim center to (transX, transY)
+        out.setPivotTransform(scaleX, scaleY, angle, animCenterX, animCenterY, transX, transY);
+
+        return t >= durationNanos;
+    }
+
+    private static float getInterpolation(Interpolator interpolator, float start, float end, float fraction) {
+        if (start == end || fraction == 1) {
+            return end;
+        } else {
+            if (interpolator == null) {
+                interpolator = ACCELERATE_DECELERATE;
+            }
+            return start + (end - start) * interpolator.getInterpolation(fraction);
+        }
+    }
+}
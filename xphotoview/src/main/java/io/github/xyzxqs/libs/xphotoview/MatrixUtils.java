@@ -33,6 +33,19 @@ class MatrixUtils {
     private MatrixUtils() {
     }
 
+    /**
+     * Read all the values of the matrix into the caller-owned {@link MatrixValues} at once and
+     * decompose them, without locking or allocating.
+     *
+     * @param matrix the matrix to decompose
+     * @param out    the storage to fill
+     * @return the out param
+     */
+    public static MatrixValues decompose(@NonNull Matrix matrix, @NonNull MatrixValues out) {
+        matrix.getValues(out.values);
+        return out.decompose();
+    }
+
     public static float getMatrixTranslateX(@NonNull Matrix matrix) {
         return getMatrixValue(matrix, Matrix.MTRANS_X);
     }
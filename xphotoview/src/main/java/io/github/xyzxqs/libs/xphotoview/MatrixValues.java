@@ -0,0 +1,115 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.graphics.Matrix;
+
+/**
+ * Caller-owned storage for the nine values of a {@link Matrix} and the scale, skew, rotate angle and
+ * translation decomposed from them.
+ * <p>
+ * Not thread safe, each owner (usually one per view or animator) keeps its own instance.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ * @see MatrixUtils#decompose(Matrix, MatrixValues)
+ */
+
+final class MatrixValues {
+
+    /**
+     * The raw matrix values, indexed by {@link Matrix#MSCALE_X} etc.
+     */
+    final float[] values = new float[9];
+
+    private float scaleX;
+    private float scaleY;
+    private float skewX;
+    private float skewY;
+    private float angle;
+    private float translateX;
+    private float translateY;
+
+    MatrixValues() {
+        values[Matrix.MSCALE_X] = 1;
+        values[Matrix.MSCALE_Y] = 1;
+        values[Matrix.MPERSP_2] = 1;
+        decompose();
+    }
+
+    /**
+     * Recalculate the decomposed fields from {@link #values}.
+     *
+     * @return this {@link MatrixValues}
+     */
+    MatrixValues decompose() {
+        final float a = values[Matrix.MSCALE_X];
+        final float b = values[Matrix.MSKEW_X];
+        final float c = values[Matrix.MSKEW_Y];
+        final float d = values[Matrix.MSCALE_Y];
+
+        scaleX = (float) Math.sqrt((double) a * a + (double) c * c);
+        scaleY = (float) Math.sqrt((double) d * d + (double) b * b);
+        skewX = b;
+        skewY = c;
+        angle = (float) -(Math.atan2(b, a) * (180 / Math.PI));
+        translateX = values[Matrix.MTRANS_X];
+        translateY = values[Matrix.MTRANS_Y];
+        return this;
+    }
+
+    void set(MatrixValues src) {
+        System.arraycopy(src.values, 0, values, 0, values.length);
+        scaleX = src.scaleX;
+        scaleY = src.scaleY;
+        skewX = src.skewX;
+        skewY = src.skewY;
+        angle = src.angle;
+        translateX = src.translateX;
+        translateY = src.translateY;
+    }
+
+    float getScaleX() {
+        return scaleX;
+    }
+
+    float getScaleY() {
+        return scaleY;
+    }
+
+    float getSkewX() {
+        return skewX;
+    }
+
+    float getSkewY() {
+        return skewY;
+    }
+
+    /**
+     * @return the rotate angle in degrees, from -180 to 180
+     */
+    float getAngle() {
+        return angle;
+    }
+
+    float getTranslateX() {
+        return translateX;
+    }
+
+    float getTranslateY() {
+        return translateY;
+    }
+}
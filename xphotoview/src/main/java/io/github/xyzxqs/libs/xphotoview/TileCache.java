@@ -0,0 +1,118 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+/**
+ * The process wide cache of the decoded tiles which are not drawn at the moment, such as the tiles
+ * scrolled out of view and the tiles of a closed photo, evicted least recently used first under a
+ * byte budget. The evicted bitmaps go to a {@link BitmapPool} to be decoded into again.
+ * <p>
+ * A bitmap is either drawn by exactly one tile or held by the cache, never both: {@link #take(String)}
+ * removes it from the cache, and the tile {@link #put(String, Bitmap)}s it back when it is
+ * released, so an evicted bitmap is never still on screen when it is reused.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class TileCache {
+
+    private static TileCache defaultCache;
+
+    private final LruCache<String, Bitmap> cache;
+    private final BitmapPool bitmapPool;
+
+    /**
+     * @return the shared cache, with a budget of 1/8 of the max heap for the cached tiles plus
+     * 1/4 of that for the pooled bitmaps
+     */
+    static synchronized TileCache getDefault() {
+        if (defaultCache == null) {
+            long maxMemory = Runtime.getRuntime().maxMemory();
+            defaultCache = new TileCache((int) Math.min(Integer.MAX_VALUE, maxMemory / 8));
+        }
+        return defaultCache;
+    }
+
+    TileCache(int maxBytes) {
+        bitmapPool = new BitmapPool(maxBytes / 4);
+        cache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return BitmapPool.byteCountOf(value);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                //a removed entry is taken by a tile, the evicted and replaced ones are not used anymore
+                if (evicted || newValue != null) {
+                    bitmapPool.put(oldValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the key of the tile of the image, the image key should change when the file changes
+     */
+    static String keyOf(@NonNull String imageKey, @NonNull ImageTile tile) {
+        return imageKey + (tile.base ? "#base@" : "#") + tile.sampleSize + ':' + tile.column + ',' + tile.row;
+    }
+
+    /**
+     * Take the cached bitmap out of the cache, the caller owns it from now on.
+     */
+    @Nullable
+    Bitmap take(@NonNull String key) {
+        return cache.remove(key);
+    }
+
+    /**
+     * Cache the bitmap which is no longer drawn.
+     */
+    void put(@NonNull String key, @NonNull Bitmap bitmap) {
+        if (!bitmap.isRecycled()) {
+            cache.put(key, bitmap);
+        }
+    }
+
+    /**
+     * Release the cached tiles and the pooled bitmaps for the memory trim level, see
+     * {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.evictAll();
+            bitmapPool.trimToSize(0);
+        } else {
+            cache.trimToSize(cache.maxSize() / 2);
+            bitmapPool.trimToSize(0);
+        }
+    }
+
+    @NonNull
+    BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes {@link ImageTile}s on a bounded pool of background threads, nearest to the viewport first.
+ * The pool is shared by all the schedulers of the process and sized to the number of cores, so
+ * several tiled images, such as the pages of a pager, do not multiply the decode threads.
+ * <p>
+ * The pending tiles of a scheduler are kept in its own priority queue ordered by the distance from
+ * the focus (the center of the visible region), and a worker takes the nearest one only when it is
+ * free, so the order follows the viewport as it moves. A worker decodes one tile per run and then
+ * queues itself again behind the other schedulers, so the images take turns on the pool. A cancelled tile is removed from the queue at once; a tile
+ * already being decoded runs to the end and its bitmap is dropped by the owner.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class TileDecodeScheduler {
+
+    interface TileDecoder {
+        /**
+         * Decode the tile, called on a worker thread. The calls on different workers run in
+         * parallel.
+         */
+        @WorkerThread
+        void decodeTile(@NonNull ImageTile tile);
+    }
+
+    private static final Comparator<ImageTile> PRIORITY_ORDER = new Comparator<ImageTile>() {
+        @Override
+        public int compare(ImageTile o1, ImageTile o2) {
+            return Float.compare(o1.priority, o2.priority);
+        }
+    };
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(r, "XphotoView-decode-" + threadCount.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    };
+
+    private static ThreadPoolExecutor sharedExecutor;
+
+    private final Object lock = new Object();
+    private final PriorityQueue<ImageTile> queue = new PriorityQueue<>(16, PRIORITY_ORDER);
+    private final ArrayList<ImageTile> reorderBuffer = new ArrayList<>();
+    private final ThreadPoolExecutor executor = getSharedExecutor();
+    private final TileDecoder decoder;
+    private final int maxWorkers;
+
+    private final Runnable worker = new Runnable() {
+        @Override
+        public void run() {
+            ImageTile tile = poll();
+            if (tile == null) {
+                return;
+            }
+            try {
+                decoder.decodeTile(tile);
+            } finally {
+                if (hasMore()) {
+                    executor.execute(worker);
+                }
+            }
+        }
+    };
+
+    //guarded by lock
+    private int activeWorkers = 0;
+    private float focusX;
+    private float focusY;
+    private boolean shutdown = false;
+
+    /**
+     * @return the number of the available cores
+     */
+    static int defaultWorkerCount() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return the decode pool of the process, its idle threads time out
+     */
+    private static synchronized ThreadPoolExecutor getSharedExecutor() {
+        if (sharedExecutor == null) {
+            final int threads = defaultWorkerCount();
+            sharedExecutor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+            sharedExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * @param workerCount at most how many tiles of this scheduler are decoded at the same time, the
+     *                    shared pool bounds all the schedulers together
+     */
+    TileDecodeScheduler(int workerCount, @NonNull TileDecoder decoder) {
+        this.maxWorkers = workerCount;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Move the focus of the queue, the pending tiles nearer to it are decoded sooner.
+     *
+     * @param x the x of the focus, in image pixels
+     * @param y the y of the focus, in image pixels
+     */
+    void setFocus(float x, float y) {
+        synchronized (lock) {
+            focusX = x;
+            focusY = y;
+            if (queue.isEmpty()) {
+                return;
+            }
+            //the priorities change all together, rebuild the heap
+            reorderBuffer.addAll(queue);
+            queue.clear();
+            for (int i = 0, size = reorderBuffer.size(); i < size; i++) {
+                ImageTile tile = reorderBuffer.get(i);
+                tile.priority = priorityOf(tile);
+                queue.add(tile);
+            }
+            reorderBuffer.clear();
+        }
+    }
+
+    void schedule(@NonNull ImageTile tile) {
+        synchronized (lock) {
+            if (shutdown || tile.cancelled) {
+                return;
+            }
+            tile.priority = priorityOf(tile);
+            queue.add(tile);
+            if (activeWorkers >= maxWorkers) {
+                return;
+            }
+            activeWorkers++;
+        }
+        executor.execute(worker);
+    }
+
+    /**
+     * Cancel the tile, it is removed from the queue if it is not being decoded yet.
+     */
+    void cancel(@NonNull ImageTile tile) {
+        tile.cancelled = true;
+        synchronized (lock) {
+            queue.remove(tile);
+        }
+    }
+
+    /**
+     * Cancel all the pending tiles and stop the workers after their current tile, the shared pool
+     * goes on for the other schedulers.
+     */
+    void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            for (ImageTile tile : queue) {
+                tile.cancelled = true;
+            }
+            queue.clear();
+        }
+    }
+
+    int getQueuedCount() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    private ImageTile poll() {
+        synchronized (lock) {
+            ImageTile tile = queue.poll();
+            while (tile != null && tile.cancelled) {
+                tile = queue.poll();
+            }
+            if (tile == null) {
+                activeWorkers--;
+            }
+            return tile;
+        }
+    }
+
+    //whether the worker queues itself again, or retires if the queue is empty
+    private boolean hasMore() {
+        synchronized (lock) {
+            if (queue.isEmpty()) {
+                activeWorkers--;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private float priorityOf(ImageTile tile) {
+        return tile.base ? -1 : tile.distanceSquaredTo(focusX, focusY);
+    }
+}
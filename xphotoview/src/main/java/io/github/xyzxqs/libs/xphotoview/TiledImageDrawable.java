@@ -0,0 +1,519 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * A drawable of a huge image, which is decoded region by region through {@link BitmapRegionDecoder}.
+ * <p>
+ * The intrinsic size is the full size of the image, so the image matrix works the same as with a
+ * plain bitmap. A subsampled base bitmap of the whole image is always drawn, and the tiles of the
+ * visible region are decoded at the level of {@link ImagePyramid} matching the current image scale
+ * and drawn over it. The tiles are decoded by a {@link TileDecodeScheduler}, nearest to the center
+ * of the viewport first, each worker with its own decoder so they run in parallel. The tiles of
+ * a region the viewport is about to reach, such as the rest position of a fling, can be prefetched.
+ * The tiles no longer drawn go to the shared {@link TileCache}, so reopening or scrolling back to
+ * a region does not decode it again, and new decodes reuse the evicted bitmaps.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+@TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+class TiledImageDrawable extends Drawable implements TileDecodeScheduler.TileDecoder {
+    private static final String TAG = TiledImageDrawable.class.getSimpleName();
+
+    /**
+     * The max side of the base bitmap, in bitmap pixels.
+     */
+    private static final int BASE_MAX_SIDE = 2048;
+
+    private final String filePath;
+    //the file path and the last modified time, the key of the image in the tile cache
+    private final String imageKey;
+    private final int imageWidth;
+    private final int imageHeight;
+    private final ImagePyramid pyramid;
+    private final ImageTile baseTile;
+
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final TileDecodeScheduler scheduler;
+    private final TileCache tileCache = TileCache.getDefault();
+
+    //BitmapRegionDecoder serializes the decoding of an instance, so every worker takes its own
+    private final ArrayDeque<BitmapRegionDecoder> idleDecoders = new ArrayDeque<>();
+
+    private final ArrayList<ImageTile> tiles = new ArrayList<>();
+    private final Rect drawRect = new Rect();
+    private final int[] tileRange = new int[4];
+
+    //the prefetched tiles are kept until the prefetch ends
+    private boolean prefetching = false;
+    private int prefetchHitCount = 0;
+    private int prefetchMissCount = 0;
+
+    //read by the workers to pick the decode config, see DecodeFormatPolicy
+    private volatile int imageQuality = XphotoView.IMAGE_QUALITY_FULL;
+    private volatile boolean opaque;
+
+    //read by the workers to drop their decoders
+    private volatile boolean recycled = false;
+
+    /**
+     * @param filePath the path of a JPEG or PNG file
+     * @throws IOException if the image can not be decoded by {@link BitmapRegionDecoder}
+     */
+    static TiledImageDrawable open(@NonNull String filePath) throws IOException {
+        BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(filePath, false);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(filePath, options);
+        return new TiledImageDrawable(filePath, decoder, DecodeFormatPolicy.isOpaqueMimeType(options.outMimeType));
+    }
+
+    private TiledImageDrawable(String filePath, BitmapRegionDecoder decoder, boolean opaque) {
+        this.filePath = filePath;
+        this.opaque = opaque;
+        this.imageKey = filePath + '?' + new File(filePath).lastModified();
+        imageWidth = decoder.getWidth();
+        imageHeight = decoder.getHeight();
+        idleDecoders.add(decoder);
+
+        int sampleSize = 1;
+        while (Math.max(imageWidth, imageHeight) / sampleSize > BASE_MAX_SIDE) {
+            sampleSize *= 2;
+        }
+        pyramid = new ImagePyramid(sampleSize);
+        scheduler = new TileDecodeScheduler(TileDecodeScheduler.defaultWorkerCount(), this);
+        baseTile = ImageTile.base(sampleSize, imageWidth, imageHeight);
+        requestTile(baseTile);
+    }
+
+    /**
+     * Update the tiles to cover the visible region of the image, on the main thread.
+     *
+     * @param visibleRect   the visible region, in image pixels
+     * @param imageScale    the current scale of the image, view pixels per image pixel
+     * @param transitioning true in the open and dismiss transitions, only the base level is drawn
+     */
+    void updateViewport(@NonNull RectF visibleRect, float imageScale, boolean transitioning) {
+        if (recycled) {
+            return;
+        }
+
+        final int sampleSize = transitioning ? pyramid.selectBase() : pyramid.select(imageScale);
+        if (pyramid.isBaseLevel() || visibleRect.isEmpty()) {
+            //the base bitmap is detailed enough
+            releaseTiles();
+            return;
+        }
+
+        scheduler.setFocus(visibleRect.centerX(), visibleRect.centerY());
+
+        getTileRange(visibleRect, sampleSize, tileRange);
+        final int left = tileRange[0];
+        final int top = tileRange[1];
+        final int right = tileRange[2];
+        final int bottom = tileRange[3];
+
+        for (int i = tiles.size() - 1; i >= 0; i--) {
+            ImageTile tile = tiles.get(i);
+            boolean outside = tile.column < left || tile.column > right
+                    || tile.row < top || tile.row > bottom;
+            if (tile.sampleSize != sampleSize || (outside && !(prefetching && tile.prefetched))) {
+                releaseTile(tile);
+                tiles.remove(i);
+            }
+        }
+
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                ImageTile tile = findTile(sampleSize, column, row);
+                if (tile == null) {
+                    tile = new ImageTile(sampleSize, column, row, imageWidth, imageHeight);
+                    tiles.add(tile);
+                    requestTile(tile);
+                    if (prefetching && !tile.isLoaded()) {
+                        prefetchMissCount++;
+                    }
+                } else if (tile.prefetched) {
+                    //the prefetched tile comes into view
+                    tile.prefetched = false;
+                    if (prefetching) {
+                        if (tile.isLoaded()) {
+                            prefetchHitCount++;
+                        } else {
+                            prefetchMissCount++;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode the tiles of the region at the current level ahead of the viewport, on the main thread.
+     * The tiles are kept until {@link #endPrefetch()}, and counted as a hit if they are loaded when
+     * they come into view.
+     *
+     * @param region the region the viewport is about to reach, in image pixels
+     */
+    void prefetch(@NonNull RectF region) {
+        if (recycled || pyramid.isBaseLevel() || region.isEmpty()
+                || imageQuality >= XphotoView.IMAGE_QUALITY_TRIMMED) {
+            return;
+        }
+        prefetching = true;
+        final int sampleSize = pyramid.getSampleSize();
+        getTileRange(region, sampleSize, tileRange);
+        for (int row = tileRange[1]; row <= tileRange[3]; row++) {
+            for (int column = tileRange[0]; column <= tileRange[2]; column++) {
+                if (findTile(sampleSize, column, row) == null) {
+                    ImageTile tile = new ImageTile(sampleSize, column, row, imageWidth, imageHeight);
+                    tile.prefetched = true;
+                    tiles.add(tile);
+                    requestTile(tile);
+                }
+            }
+        }
+    }
+
+    /**
+     * End the prefetch, the prefetched tiles out of the viewport are released on the next
+     * {@link #updateViewport(RectF, float, boolean)}.
+     */
+    void endPrefetch() {
+        prefetching = false;
+    }
+
+    /**
+     * Degrade or restore the image under memory pressure, on the main thread. The tiles out of
+     * the viewport are released from {@link XphotoView#IMAGE_QUALITY_TRIMMED}, the finest level is
+     * dropped from {@link XphotoView#IMAGE_QUALITY_REDUCED}, and only the base bitmap is kept at
+     * {@link XphotoView#IMAGE_QUALITY_BASE}. Call {@link #updateViewport(RectF, float, boolean)}
+     * after to apply the change to the visible tiles.
+     */
+    void setImageQuality(int quality) {
+        imageQuality = quality;
+        if (quality >= XphotoView.IMAGE_QUALITY_TRIMMED) {
+            prefetching = false;
+        }
+        if (quality >= XphotoView.IMAGE_QUALITY_BASE) {
+            pyramid.setFinestSampleSize(pyramid.getBaseSampleSize());
+        } else if (quality >= XphotoView.IMAGE_QUALITY_REDUCED) {
+            pyramid.setFinestSampleSize(2);
+        } else {
+            pyramid.setFinestSampleSize(1);
+        }
+    }
+
+    /**
+     * @return the bytes the tiles in memory of this image save by being decoded to RGB_565
+     * instead of ARGB_8888, on the main thread
+     */
+    long getBytesSaved() {
+        long saved = bytesSavedBy(baseTile.bitmap);
+        for (int i = 0, size = tiles.size(); i < size; i++) {
+            saved += bytesSavedBy(tiles.get(i).bitmap);
+        }
+        return saved;
+    }
+
+    private static long bytesSavedBy(@Nullable Bitmap bitmap) {
+        if (bitmap == null || bitmap.getConfig() != Bitmap.Config.RGB_565) {
+            return 0;
+        }
+        //the same pixels in ARGB_8888 take twice the bytes
+        return (long) bitmap.getWidth() * bitmap.getHeight() * 2;
+    }
+
+    int getPrefetchHitCount() {
+        return prefetchHitCount;
+    }
+
+    int getPrefetchMissCount() {
+        return prefetchMissCount;
+    }
+
+    void resetPrefetchCounters() {
+        prefetchHitCount = 0;
+        prefetchMissCount = 0;
+    }
+
+    /**
+     * Get the columns and rows of the tiles covering the region, as [left, top, right, bottom],
+     * inclusive.
+     */
+    private void getTileRange(RectF region, int sampleSize, int[] out) {
+        final int span = ImageTile.TILE_SIZE * sampleSize;
+        out[0] = Math.max(0, (int) (region.left / span));
+        out[1] = Math.max(0, (int) (region.top / span));
+        out[2] = Math.min((imageWidth - 1) / span, (int) (region.right / span));
+        out[3] = Math.min((imageHeight - 1) / span, (int) (region.bottom / span));
+    }
+
+    @Nullable
+    private ImageTile findTile(int sampleSize, int column, int row) {
+        for (int i = 0, size = tiles.size(); i < size; i++) {
+            ImageTile tile = tiles.get(i);
+            if (tile.is(sampleSize, column, row)) {
+                return tile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Take the bitmap of the tile from the cache, or decode it.
+     */
+    private void requestTile(ImageTile tile) {
+        Bitmap cached = tileCache.take(TileCache.keyOf(imageKey, tile));
+        if (cached != null) {
+            tile.bitmap = cached;
+        } else {
+            scheduler.schedule(tile);
+        }
+    }
+
+    private void releaseTile(ImageTile tile) {
+        scheduler.cancel(tile);
+        Bitmap bitmap = tile.release();
+        if (bitmap != null) {
+            cacheTile(tile, bitmap);
+        }
+    }
+
+    private void cacheTile(ImageTile tile, Bitmap bitmap) {
+        if (imageQuality >= XphotoView.IMAGE_QUALITY_TRIMMED) {
+            //do not refill the cache under memory pressure
+            bitmap.recycle();
+        } else {
+            tileCache.put(TileCache.keyOf(imageKey, tile), bitmap);
+        }
+    }
+
+    private void releaseTiles() {
+        for (int i = 0, size = tiles.size(); i < size; i++) {
+            releaseTile(tiles.get(i));
+        }
+        tiles.clear();
+    }
+
+    /**
+     * Release the detail tiles into the tile cache and the idle decoders, on the main thread, such
+     * as when the view is detached. Only the base bitmap is kept, the tiles and the decoders come
+     * back with the next {@link #updateViewport(RectF, float, boolean)}.
+     */
+    void trim() {
+        if (recycled) {
+            return;
+        }
+        prefetching = false;
+        releaseTiles();
+        synchronized (idleDecoders) {
+            for (BitmapRegionDecoder decoder : idleDecoders) {
+                decoder.recycle();
+            }
+            idleDecoders.clear();
+        }
+    }
+
+    /**
+     * Release all the bitmaps and the decoders, on the main thread. The drawable draws nothing after
+     * it is recycled.
+     */
+    void recycle() {
+        if (recycled) {
+            return;
+        }
+        recycled = true;
+        scheduler.shutdown();
+        releaseTiles();
+        releaseTile(baseTile);
+        //the decoders in use are recycled by their workers
+        synchronized (idleDecoders) {
+            for (BitmapRegionDecoder decoder : idleDecoders) {
+                decoder.recycle();
+            }
+            idleDecoders.clear();
+        }
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (recycled) {
+            return;
+        }
+        final Rect bounds = getBounds();
+        if (baseTile.isLoaded()) {
+            canvas.drawBitmap(baseTile.bitmap, null, bounds, paint);
+        }
+        for (int i = 0, size = tiles.size(); i < size; i++) {
+            ImageTile tile = tiles.get(i);
+            if (tile.isLoaded()) {
+                drawRect.set(tile.left, tile.top, tile.right, tile.bottom);
+                drawRect.offset(bounds.left, bounds.top);
+                canvas.drawBitmap(tile.bitmap, null, drawRect, paint);
+            }
+        }
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return imageWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return imageHeight;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        paint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    @Override
+    public void decodeTile(@NonNull final ImageTile tile) {
+        if (tile.cancelled) {
+            return;
+        }
+        BitmapRegionDecoder decoder = acquireDecoder();
+        if (decoder == null) {
+            return;
+        }
+        Bitmap bitmap = null;
+        try {
+            bitmap = decodeTile(decoder, tile);
+            if (tile.base && bitmap != null && !bitmap.hasAlpha()) {
+                //such as a PNG without alpha channel, the tiles after can be decoded to RGB_565
+                opaque = true;
+            }
+        } catch (RuntimeException | OutOfMemoryError e) {
+            Log.w(TAG, "decode " + tile + " failed", e);
+        } finally {
+            releaseDecoder(decoder);
+        }
+
+        final Bitmap decoded = bitmap;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (tile.cancelled || recycled) {
+                    //still good for when the region comes back
+                    if (decoded != null) {
+                        cacheTile(tile, decoded);
+                    }
+                } else {
+                    tile.bitmap = decoded;
+                    invalidateSelf();
+                }
+            }
+        });
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private Bitmap decodeTile(BitmapRegionDecoder decoder, ImageTile tile) {
+        final Rect region = new Rect(tile.left, tile.top, tile.right, tile.bottom);
+        final Bitmap.Config config = DecodeFormatPolicy.preferRgb565(opaque, tile.base, tile.sampleSize, imageQuality)
+                ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = tile.sampleSize;
+        options.inPreferredConfig = config;
+        if (!BitmapPool.canReuseBitmaps()) {
+            return decoder.decodeRegion(region, options);
+        }
+
+        //mutable, so it can be decoded into again after it is evicted from the cache
+        options.inMutable = true;
+        //reuse a bitmap only when the decoded size is exact, otherwise it may keep stale pixels
+        if (region.width() % tile.sampleSize == 0 && region.height() % tile.sampleSize == 0) {
+            options.inBitmap = tileCache.getBitmapPool().get(region.width() / tile.sampleSize,
+                    region.height() / tile.sampleSize, config);
+        }
+        try {
+            return decoder.decodeRegion(region, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            tileCache.getBitmapPool().put(options.inBitmap);
+            options.inBitmap = null;
+            return decoder.decodeRegion(region, options);
+        }
+    }
+
+    @Nullable
+    private BitmapRegionDecoder acquireDecoder() {
+        synchronized (idleDecoders) {
+            BitmapRegionDecoder decoder = idleDecoders.poll();
+            if (decoder != null || recycled) {
+                return decoder;
+            }
+        }
+        try {
+            return BitmapRegionDecoder.newInstance(filePath, false);
+        } catch (IOException e) {
+            Log.w(TAG, "open decoder failed: " + filePath, e);
+            return null;
+        }
+    }
+
+    private void releaseDecoder(BitmapRegionDecoder decoder) {
+        synchronized (idleDecoders) {
+            if (!recycled) {
+                idleDecoders.add(decoder);
+                return;
+            }
+        }
+        decoder.recycle();
+    }
+}
@@ -0,0 +1,274 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+/**
+ * Extrapolates the focus, span and angle of a gesture to the time its frame is expected on screen,
+ * so the image does not trail the fingers by the one or two vsyncs between the touch event and
+ * the presentation. The prediction is kept as offsets from the reported values. Every update gives
+ * the wanted offsets, which only become the offsets once they are reported applied, so a part of
+ * the gesture the listener did not take is not predicted either. {@link #retract()} drops them
+ * when the fingers change or lift. The offsets are clamped, and every prediction is checked
+ * against the focus the fingers really reached at its target time.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class TouchPredictor {
+
+    private final float maxDistance;
+    private final float maxScale;
+    private final float maxDegrees;
+
+    private long leadTime;
+
+    private float lastX;
+    private float lastY;
+    private long lastTime;
+    private boolean hasLast;
+    private float velocityX;
+    private float velocityY;
+
+    //the prediction applied on top of the reported gesture, only what was reported applied
+    private float offsetX;
+    private float offsetY;
+    private float offsetScale = 1;
+    private float offsetDegrees;
+
+    //the offsets wanted by the last update
+    private float targetX;
+    private float targetY;
+    private float targetScale = 1;
+    private float targetDegrees;
+
+    //the focus predicted for pendingTime, checked by the first sample after it
+    private float pendingX;
+    private float pendingY;
+    private long pendingTime;
+    private boolean hasPending;
+
+    private int errorCount;
+    private double errorSum;
+    private float maxError;
+
+    /**
+     * @param maxDistance the max distance in pixels the focus may be predicted ahead
+     * @param maxScale    the max relative scale the span may be predicted ahead, e.g. 0.1 for 10%
+     * @param maxDegrees  the max angle in degrees the rotation may be predicted ahead
+     */
+    TouchPredictor(float maxDistance, float maxScale, float maxDegrees) {
+        this.maxDistance = maxDistance;
+        this.maxScale = maxScale;
+        this.maxDegrees = maxDegrees;
+    }
+
+    /**
+     * @param leadTime how far ahead of the touch events to predict, in milliseconds, 0 to disable
+     */
+    void setLeadTime(long leadTime) {
+        this.leadTime = Math.max(0, leadTime);
+    }
+
+    long getLeadTime() {
+        return leadTime;
+    }
+
+    boolean isEnabled() {
+        return leadTime > 0;
+    }
+
+    /**
+     * Start over from the given focus, e.g. after a pointer went down or up. The offsets must be
+     * {@link #retract() retracted} before.
+     */
+    void reset(float focusX, float focusY, long eventTime) {
+        lastX = focusX;
+        lastY = focusY;
+        lastTime = eventTime;
+        hasLast = true;
+        velocityX = velocityY = 0;
+        hasPending = false;
+        targetX = offsetX;
+        targetY = offsetY;
+        targetScale = offsetScale;
+        targetDegrees = offsetDegrees;
+    }
+
+    /**
+     * Feed the focus of a move event and predict it ahead, see {@link #applyFocus()}.
+     */
+    void predictFocus(float focusX, float focusY, long eventTime) {
+        targetX = offsetX;
+        targetY = offsetY;
+        if (!hasLast) {
+            reset(focusX, focusY, eventTime);
+            return;
+        }
+        final long dt = eventTime - lastTime;
+        if (dt <= 0) {
+            return;
+        }
+        checkPending(focusX, focusY, eventTime);
+        velocityX = smoothVelocity(velocityX, (focusX - lastX) * 1000f / dt);
+        velocityY = smoothVelocity(velocityY, (focusY - lastY) * 1000f / dt);
+        lastX = focusX;
+        lastY = focusY;
+        lastTime = eventTime;
+        if (!isEnabled()) {
+            targetX = targetY = 0;
+            return;
+        }
+
+        float x = velocityX * leadTime / 1000f;
+        float y = velocityY * leadTime / 1000f;
+        final float distance = (float) Math.hypot(x, y);
+        if (distance > maxDistance) {
+            x *= maxDistance / distance;
+            y *= maxDistance / distance;
+        }
+        targetX = x;
+        targetY = y;
+        if (!hasPending) {
+            pendingX = focusX + x;
+            pendingY = focusY + y;
+            pendingTime = eventTime + leadTime;
+            hasPending = true;
+        }
+    }
+
+    /**
+     * Predict the span and angle ahead, see {@link #applyScale()} and {@link #applyDegrees()}.
+     *
+     * @param scaleVelocity the relative scale velocity, per second
+     * @param angleVelocity the rotation velocity, in degrees per second
+     */
+    void predictScaleAndAngle(float scaleVelocity, float angleVelocity) {
+        if (!isEnabled()) {
+            targetScale = 1;
+            targetDegrees = 0;
+            return;
+        }
+        targetScale = 1 + clamp(scaleVelocity * leadTime / 1000f, maxScale);
+        targetDegrees = clamp(angleVelocity * leadTime / 1000f, maxDegrees);
+    }
+
+    /**
+     * The scroll of the last update has been applied, so is its predicted focus.
+     */
+    void applyFocus() {
+        offsetX = targetX;
+        offsetY = targetY;
+    }
+
+    /**
+     * The scale of the last update has been applied, so is its predicted scale.
+     */
+    void applyScale() {
+        offsetScale = targetScale;
+    }
+
+    /**
+     * The rotation of the last update has been applied, so is its predicted angle.
+     */
+    void applyDegrees() {
+        offsetDegrees = targetDegrees;
+    }
+
+    /**
+     * @return true if the offsets predict anything
+     */
+    boolean hasOffsets() {
+        return offsetX != 0 || offsetY != 0 || offsetScale != 1 || offsetDegrees != 0;
+    }
+
+    /**
+     * Drop the predicted offsets, the applied prediction must be taken back before.
+     */
+    void retract() {
+        offsetX = offsetY = offsetDegrees = 0;
+        offsetScale = 1;
+        targetX = targetY = targetDegrees = 0;
+        targetScale = 1;
+        hasPending = false;
+    }
+
+    float getOffsetX() {
+        return offsetX;
+    }
+
+    float getOffsetY() {
+        return offsetY;
+    }
+
+    float getOffsetScale() {
+        return offsetScale;
+    }
+
+    float getOffsetDegrees() {
+        return offsetDegrees;
+    }
+
+    /**
+     * @return how many predictions have been checked against the real focus
+     */
+    int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return the mean distance in pixels between the predicted and the real focus
+     */
+    float getMeanError() {
+        return errorCount == 0 ? 0 : (float) (errorSum / errorCount);
+    }
+
+    /**
+     * @return the max distance in pixels between the predicted and the real focus
+     */
+    float getMaxError() {
+        return maxError;
+    }
+
+    void resetErrors() {
+        errorCount = 0;
+        errorSum = 0;
+        maxError = 0;
+    }
+
+    //the real focus at the pending time is interpolated between the samples around it
+    private void checkPending(float focusX, float focusY, long eventTime) {
+        if (!hasPending || eventTime < pendingTime) {
+            return;
+        }
+        final float fraction = (float) (pendingTime - lastTime) / (eventTime - lastTime);
+        final float x = lastX + (focusX - lastX) * fraction;
+        final float y = lastY + (focusY - lastY) * fraction;
+        final float error = (float) Math.hypot(pendingX - x, pendingY - y);
+        errorCount++;
+        errorSum += error;
+        maxError = Math.max(maxError, error);
+        hasPending = false;
+    }
+
+    private static float clamp(float value, float max) {
+        return Math.max(-max, Math.min(max, value));
+    }
+
+    private static float smoothVelocity(float last, float current) {
+        return last * 0.4f + current * 0.6f;
+    }
+}
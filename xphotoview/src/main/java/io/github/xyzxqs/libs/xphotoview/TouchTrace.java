@@ -0,0 +1,195 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.support.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The binary format of the touch traces written by {@link TouchTraceRecorder} and replayed by
+ * {@link TouchTraceReplay}. A trace is a header followed by the events, each one is:
+ * <pre>
+ * byte  action, the masked action
+ * byte  action index
+ * byte  pointer count
+ * short sample count, the historical samples and the current one
+ * byte  pointer id, for each pointer
+ * then for each sample:
+ *   int   event time, in ms from the first sample of the trace
+ *   float x, float y, for each pointer
+ * </pre>
+ * It has no Android dependency, the recorder and the replay convert from and to MotionEvents.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class TouchTrace {
+
+    static final int MAGIC = 0x58505454; //XPTT
+    static final int VERSION = 1;
+
+    private TouchTrace() {
+    }
+
+    /**
+     * One event of a trace, reused by {@link Reader#next(Event)}.
+     */
+    static final class Event {
+        int action;
+        int actionIndex;
+        int pointerCount;
+        int sampleCount;
+        int[] pointerIds = new int[0];
+        //in ms from the first sample of the trace
+        long[] eventTimes = new long[0];
+        //by sample, then by pointer
+        float[] x = new float[0];
+        float[] y = new float[0];
+
+        float getX(int sample, int pointer) {
+            return x[sample * pointerCount + pointer];
+        }
+
+        float getY(int sample, int pointer) {
+            return y[sample * pointerCount + pointer];
+        }
+
+        /**
+         * @return the time of the current sample, the last one
+         */
+        long getEventTime() {
+            return eventTimes[sampleCount - 1];
+        }
+
+        private void ensureCapacity() {
+            if (pointerIds.length < pointerCount) {
+                pointerIds = new int[pointerCount];
+            }
+            if (eventTimes.length < sampleCount) {
+                eventTimes = new long[sampleCount];
+            }
+            if (x.length < sampleCount * pointerCount) {
+                x = new float[sampleCount * pointerCount];
+                y = new float[sampleCount * pointerCount];
+            }
+        }
+    }
+
+    /**
+     * Writes the events field by field, in the order of the format, so the recorder needs no
+     * buffer of its own.
+     */
+    static final class Writer {
+        private final DataOutputStream out;
+        private boolean hasBaseTime;
+        private long baseTime;
+
+        Writer(@NonNull OutputStream out) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+        }
+
+        void beginEvent(int action, int actionIndex, int pointerCount, int sampleCount) throws IOException {
+            out.writeByte(action);
+            out.writeByte(actionIndex);
+            out.writeByte(pointerCount);
+            out.writeShort(sampleCount);
+        }
+
+        void writePointerId(int pointerId) throws IOException {
+            out.writeByte(pointerId);
+        }
+
+        void writeSampleTime(long eventTime) throws IOException {
+            if (!hasBaseTime) {
+                baseTime = eventTime;
+                hasBaseTime = true;
+            }
+            out.writeInt((int) (eventTime - baseTime));
+        }
+
+        void writeCoords(float x, float y) throws IOException {
+            out.writeFloat(x);
+            out.writeFloat(y);
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+
+    static final class Reader {
+        private final DataInputStream in;
+
+        Reader(@NonNull InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            if (this.in.readInt() != MAGIC) {
+                throw new IOException("not a touch trace");
+            }
+            final int version = this.in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("unsupported touch trace version " + version);
+            }
+        }
+
+        /**
+         * @return false at the end of the trace
+         */
+        boolean next(@NonNull Event event) throws IOException {
+            final int action = in.read();
+            if (action < 0) {
+                return false;
+            }
+            try {
+                event.action = action;
+                event.actionIndex = in.readUnsignedByte();
+                event.pointerCount = in.readUnsignedByte();
+                event.sampleCount = in.readUnsignedShort();
+                event.ensureCapacity();
+                for (int p = 0; p < event.pointerCount; p++) {
+                    event.pointerIds[p] = in.readUnsignedByte();
+                }
+                for (int s = 0; s < event.sampleCount; s++) {
+                    event.eventTimes[s] = in.readInt();
+                    for (int p = 0; p < event.pointerCount; p++) {
+                        event.x[s * event.pointerCount + p] = in.readFloat();
+                        event.y[s * event.pointerCount + p] = in.readFloat();
+                    }
+                }
+            } catch (EOFException e) {
+                //the recording was cut in the middle of an event
+                return false;
+            }
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.view.MotionEvent;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records the touch events of an {@link XphotoView} into a compact binary trace: the pointer
+ * samples, the historical ones included, with their event times. Attach it by
+ * {@link XphotoView#setTouchTraceRecorder(TouchTraceRecorder)} to capture a gesture which janks,
+ * then replay the trace in a test. Recording allocates nothing per event, the samples go straight
+ * into a buffered stream.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+public final class TouchTraceRecorder {
+    private static final String TAG = TouchTraceRecorder.class.getSimpleName();
+
+    private final TouchTrace.Writer writer;
+    private int eventCount;
+    private boolean failed;
+
+    /**
+     * @param out where to write the trace, closed by {@link #close()}
+     * @throws IOException if the header of the trace can not be written
+     */
+    public TouchTraceRecorder(@NonNull OutputStream out) throws IOException {
+        writer = new TouchTrace.Writer(new BufferedOutputStream(out));
+    }
+
+    /**
+     * Record an event, a failed write stops the recording.
+     */
+    public void record(@NonNull MotionEvent event) {
+        if (failed) {
+            return;
+        }
+        final int pointerCount = event.getPointerCount();
+        final int historySize = event.getHistorySize();
+        try {
+            writer.beginEvent(event.getActionMasked(), event.getActionIndex(), pointerCount, historySize + 1);
+            for (int p = 0; p < pointerCount; p++) {
+                writer.writePointerId(event.getPointerId(p));
+            }
+            for (int h = 0; h < historySize; h++) {
+                writer.writeSampleTime(event.getHistoricalEventTime(h));
+                for (int p = 0; p < pointerCount; p++) {
+                    writer.writeCoords(event.getHistoricalX(p, h), event.getHistoricalY(p, h));
+                }
+            }
+            writer.writeSampleTime(event.getEventTime());
+            for (int p = 0; p < pointerCount; p++) {
+                writer.writeCoords(event.getX(p), event.getY(p));
+            }
+            eventCount++;
+        } catch (IOException e) {
+            Log.w(TAG, "record: stopped after " + eventCount + " events", e);
+            failed = true;
+        }
+    }
+
+    /**
+     * @return the count of the events recorded
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Flush and close the trace.
+     */
+    public void close() throws IOException {
+        writer.close();
+    }
+}
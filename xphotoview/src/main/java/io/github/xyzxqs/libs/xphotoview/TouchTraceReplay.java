@@ -0,0 +1,247 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.support.annotation.NonNull;
+import android.view.MotionEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a touch trace written by {@link TouchTraceRecorder} through the gesture detector and
+ * the transform pipeline of an {@link XphotoView}, with its animations driven by a
+ * {@link VirtualFrameClock}. The frames run at a fixed interval on the event times of the trace,
+ * so a replay is deterministic: the same trace gives the same transforms on every run, and the
+ * work measured per frame can be compared across builds.
+ * <p>
+ * Run it on the main thread of an instrumentation test, with the view laid out and the image set.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class TouchTraceReplay {
+
+    //the settle animations after the last event, at most 10s at 60fps
+    private static final int MAX_IDLE_FRAMES = 600;
+
+    /**
+     * The image transform after a frame, and the time spent to get there.
+     */
+    static final class Frame {
+        //the virtual time of the frame, in ns from the first event
+        long time;
+        float scaleX;
+        float scaleY;
+        float angle;
+        float translateX;
+        float translateY;
+        //the wall time spent in the touch events since the last frame, and in the frame itself
+        long touchNanos;
+        long frameNanos;
+        int touchEvents;
+
+        long getWorkNanos() {
+            return touchNanos + frameNanos;
+        }
+    }
+
+    static final class Report {
+        final List<Frame> frames = new ArrayList<>();
+        int eventCount;
+
+        int getFrameCount() {
+            return frames.size();
+        }
+
+        Frame getFrame(int index) {
+            return frames.get(index);
+        }
+
+        long getMaxWorkNanos() {
+            long max = 0;
+            for (Frame frame : frames) {
+                max = Math.max(max, frame.getWorkNanos());
+            }
+            return max;
+        }
+
+        long getMeanWorkNanos() {
+            if (frames.isEmpty()) {
+                return 0;
+            }
+            long sum = 0;
+            for (Frame frame : frames) {
+                sum += frame.getWorkNanos();
+            }
+            return sum / frames.size();
+        }
+
+        /**
+         * @return the largest difference of the transform values between the frames of the two
+         * replays, or infinity if they do not have the same frames
+         */
+        float maxTransformDifference(@NonNull Report other) {
+            if (other.frames.size() != frames.size()) {
+                return Float.POSITIVE_INFINITY;
+            }
+            float max = 0;
+            for (int i = 0; i < frames.size(); i++) {
+                Frame a = frames.get(i);
+                Frame b = other.frames.get(i);
+                if (a.time != b.time) {
+                    return Float.POSITIVE_INFINITY;
+                }
+                max = Math.max(max, Math.abs(a.scaleX - b.scaleX));
+                max = Math.max(max, Math.abs(a.scaleY - b.scaleY));
+                max = Math.max(max, Math.abs(a.angle - b.angle));
+                max = Math.max(max, Math.abs(a.translateX - b.translateX));
+                max = Math.max(max, Math.abs(a.translateY - b.translateY));
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "frames: " + frames.size() + ", events: " + eventCount
+                    + ", mean work: " + getMeanWorkNanos() / 1000 + "us"
+                    + ", max work: " + getMaxWorkNanos() / 1000 + "us";
+        }
+    }
+
+    private final XphotoView view;
+    private final long frameIntervalNanos;
+    private final VirtualFrameClock clock = new VirtualFrameClock();
+    private final TouchTrace.Event event = new TouchTrace.Event();
+
+    private MotionEvent.PointerCoords[] pointerCoords = new MotionEvent.PointerCoords[0];
+    private int[] pointerIds = new int[0];
+    private Report report;
+    private long nextFrameTime;
+    private long pendingTouchNanos;
+    private int pendingTouchEvents;
+
+    TouchTraceReplay(@NonNull XphotoView view) {
+        this(view, VirtualFrameClock.DEFAULT_FRAME_INTERVAL_NANOS);
+    }
+
+    TouchTraceReplay(@NonNull XphotoView view, long frameIntervalNanos) {
+        this.view = view;
+        this.frameIntervalNanos = frameIntervalNanos;
+    }
+
+    /**
+     * Replay the trace, then run the frames until the animations end. The view keeps the virtual
+     * clock after.
+     */
+    Report replay(@NonNull InputStream trace) throws IOException {
+        TouchTrace.Reader reader = new TouchTrace.Reader(trace);
+        report = new Report();
+        view.setFrameClock(clock);
+        //the trace times start at 0, the clock is already there
+        nextFrameTime = clock.nanoTime() + frameIntervalNanos;
+        long downTime = 0;
+        try {
+            while (reader.next(event)) {
+                final long eventTimeNanos = event.getEventTime() * 1000000;
+                runFramesUntil(eventTimeNanos);
+                clock.advance(eventTimeNanos - clock.nanoTime());
+                if (event.action == MotionEvent.ACTION_DOWN) {
+                    downTime = event.eventTimes[0];
+                }
+                dispatch(downTime);
+                report.eventCount++;
+            }
+        } finally {
+            reader.close();
+        }
+        for (int i = 0; i < MAX_IDLE_FRAMES && (clock.hasPendingCallbacks() || pendingTouchEvents > 0); i++) {
+            runFrame();
+        }
+        return report;
+    }
+
+    private void runFramesUntil(long timeNanos) {
+        while (nextFrameTime <= timeNanos) {
+            runFrame();
+        }
+    }
+
+    private void runFrame() {
+        clock.advance(nextFrameTime - clock.nanoTime());
+        final long start = System.nanoTime();
+        clock.step(0);
+        final long frameNanos = System.nanoTime() - start;
+
+        Frame frame = new Frame();
+        frame.time = nextFrameTime;
+        frame.scaleX = view.getImageScaleX();
+        frame.scaleY = view.getImageScaleY();
+        frame.angle = view.getImageAngle();
+        frame.translateX = view.getImageTranslateX();
+        frame.translateY = view.getImageTranslateY();
+        frame.touchNanos = pendingTouchNanos;
+        frame.touchEvents = pendingTouchEvents;
+        frame.frameNanos = frameNanos;
+        report.frames.add(frame);
+
+        pendingTouchNanos = 0;
+        pendingTouchEvents = 0;
+        nextFrameTime += frameIntervalNanos;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void dispatch(long downTime) {
+        final int pointerCount = event.pointerCount;
+        if (pointerCoords.length < pointerCount) {
+            pointerCoords = new MotionEvent.PointerCoords[pointerCount];
+            for (int p = 0; p < pointerCount; p++) {
+                pointerCoords[p] = new MotionEvent.PointerCoords();
+            }
+            pointerIds = new int[pointerCount];
+        }
+        System.arraycopy(event.pointerIds, 0, pointerIds, 0, pointerCount);
+        setCoords(0);
+        final int action = event.action
+                | (event.actionIndex << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+        //the first sample, and the others are batched after it, the last one is the current
+        MotionEvent motionEvent = MotionEvent.obtain(downTime, event.eventTimes[0], action,
+                pointerCount, pointerIds, pointerCoords, 0, 1, 1, 0, 0, 0, 0);
+        for (int s = 1; s < event.sampleCount; s++) {
+            setCoords(s);
+            motionEvent.addBatch(event.eventTimes[s], pointerCoords, 0);
+        }
+
+        final long start = System.nanoTime();
+        view.onTouchEvent(motionEvent);
+        pendingTouchNanos += System.nanoTime() - start;
+        pendingTouchEvents++;
+        motionEvent.recycle();
+    }
+
+    private void setCoords(int sample) {
+        for (int p = 0; p < event.pointerCount; p++) {
+            MotionEvent.PointerCoords coords = pointerCoords[p];
+            coords.x = event.getX(sample, p);
+            coords.y = event.getY(sample, p);
+            coords.pressure = 1;
+            coords.size = 1;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.support.annotation.NonNull;
+
+/**
+ * A {@link FrameClock} which only moves when it is told to, for deterministic tests, benchmarks
+ * and replays.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class VirtualFrameClock extends FrameClock {
+
+    /**
+     * 60fps
+     */
+    static final long DEFAULT_FRAME_INTERVAL_NANOS = 16666667;
+
+    private final CallbackQueue queue = new CallbackQueue();
+
+    private long nanoTime;
+
+    VirtualFrameClock() {
+        this(0);
+    }
+
+    VirtualFrameClock(long startNanos) {
+        nanoTime = startNanos;
+    }
+
+    @Override
+    void postFrameCallback(@NonNull FrameCallback callback) {
+        queue.add(callback);
+    }
+
+    @Override
+    void removeFrameCallback(@NonNull FrameCallback callback) {
+        queue.remove(callback);
+    }
+
+    @Override
+    long nanoTime() {
+        return nanoTime;
+    }
+
+    boolean hasPendingCallbacks() {
+        return !queue.isEmpty();
+    }
+
+    /**
+     * Advance the time without running a frame.
+     */
+    void advance(long nanos) {
+        nanoTime += nanos;
+    }
+
+    /**
+     * Advance the time by the interval and run a frame with the new time.
+     */
+    void step(long frameIntervalNanos) {
+        nanoTime += frameIntervalNanos;
+        queue.run(nanoTime);
+    }
+
+    /**
+     * Run frames at the interval until no callback is pending, at most maxFrames.
+     *
+     * @return the number of frames that were run
+     */
+    int runUntilIdle(long frameIntervalNanos, int maxFrames) {
+        int frames = 0;
+        while (hasPendingCallbacks() && frames < maxFrames) {
+            step(frameIntervalNanos);
+            frames++;
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,525 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The gesture behavior of {@link XphotoView}: how the gestures reported by
+ * {@link GooglePhotosGestureDetector} zoom, pan, rotate, fling, dismiss and settle the image. It
+ * only knows the view and drawable sizes and the image transform, and tells its {@link Host} what
+ * to do, so it runs (and can be tested, benchmarked and fuzzed) on a plain JVM.
+ * <p>
+ * The host must apply the post commands to the transform given to the engine right away, the
+ * engine reads it back within the same gesture callback.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+final class XphotoGestureEngine {
+
+    /**
+     * Applies the commands of the engine, {@link XphotoView} or a headless one.
+     */
+    interface Host {
+
+        void postTranslate(float deltaX, float deltaY);
+
+        void postScale(float deltaScale, float px, float py);
+
+        void postRotate(float deltaDegrees, float px, float py);
+
+        /**
+         * Stop the settle animation or fling, the fingers take over the image.
+         */
+        void cancelSettle();
+
+        /**
+         * Start a settle animation to the target, which is only valid during this call.
+         *
+         * @return false if a higher priority animation is running
+         */
+        boolean settle(@NonNull SettleTarget target);
+
+        /**
+         * Start a fling within the given bounds of the image translation, then call
+         * {@link #onFlingEnd()} or {@link #onFlingCancel()} when it is over.
+         *
+         * @return false if a higher priority animation is running
+         */
+        boolean fling(float velocityX, float velocityY,
+                      float minX, float maxX, float minY, float maxY);
+
+        /**
+         * @return true if the image can be dismissed back to where it was opened from
+         */
+        boolean canDismiss();
+
+        void dismiss();
+
+        /**
+         * @return true while the open or dismiss transition is running
+         */
+        boolean isInTransition();
+    }
+
+    /**
+     * Where a settle animation goes, the rotation always settles to 0.
+     */
+    static final class SettleTarget {
+        boolean hasScale;
+        float scale;
+        boolean hasTranslateX;
+        float translateX;
+        boolean hasTranslateY;
+        float translateY;
+        boolean hasCenter;
+        float centerX;
+        float centerY;
+        //the tween duration in ms, or 0 for a spring
+        long duration;
+        //whether the spring goes on with the velocity of the fingers
+        boolean withGestureVelocity;
+        //whether it only moves the image back into the view, then call onFitXYEnd()
+        boolean fitXY;
+
+        private SettleTarget reset() {
+            hasScale = hasTranslateX = hasTranslateY = hasCenter = false;
+            scale = translateX = translateY = centerX = centerY = 0;
+            duration = 0;
+            withGestureVelocity = fitXY = false;
+            return this;
+        }
+    }
+
+    static final float H_SPACE_CLOSE_WINDOW = 40;
+    static final float H_SPACE_THRESHOLD = 200;
+    static final float FLING_OVER_SCROLL = 80;
+    static final long ZOOM_DURATION = 220;
+
+    private static final float[] scaleStepValues = {1f, 2f};
+
+    private final AffineMatrix transform;
+    private final Host host;
+    private final SettleTarget target = new SettleTarget();
+    private final MatrixValues values = new MatrixValues();
+    private final float[] drawableCorners = new float[8];
+    private final float[] drawableCenter = new float[2];
+    private final float[] imageCorners = new float[8];
+    private final float[] imageCenter = new float[2];
+
+    private float viewWidth;
+    private float viewHeight;
+    private float drawableWidth;
+    private float drawableHeight;
+    private float laidOutScale = 1;
+    private boolean isLongPhoto = false;
+
+    private int scaleStepsIndex = 0;
+    private float initMotionY4Scroll;
+
+    //is new motion event for single finger scroll
+    private boolean isNew4SFScroll = true;
+    //is in single finger scroll to change scale state
+    private boolean isInSFScrollChangeScale = false;
+    private boolean isNewEvent4Scale = true;
+    private boolean firstScaleIsZoomOut = true;
+    private boolean isFitXYUpdating = false;
+    private boolean isOnFling = false;
+    private boolean isDoubleTapping = false;
+
+    /**
+     * @param transform the image transform, read only, the host applies the commands to it
+     */
+    XphotoGestureEngine(@NonNull AffineMatrix transform, @NonNull Host host) {
+        this.transform = transform;
+        this.host = host;
+    }
+
+    /**
+     * Set the sizes when the image is laid out, the image fits the view width then.
+     */
+    void setLayout(float viewWidth, float viewHeight, float drawableWidth, float drawableHeight) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        setDrawableSize(drawableWidth, drawableHeight);
+        laidOutScale = viewWidth / drawableWidth;
+        isLongPhoto = laidOutScale * drawableHeight > viewHeight;
+    }
+
+    /**
+     * A drawable of another size is swapped in, whose size is the old one divided by (sx, sy).
+     */
+    void onDrawableSwapped(float drawableWidth, float drawableHeight, float sx) {
+        setDrawableSize(drawableWidth, drawableHeight);
+        laidOutScale *= sx;
+    }
+
+    private void setDrawableSize(float width, float height) {
+        drawableWidth = width;
+        drawableHeight = height;
+        drawableCorners[2] = drawableCorners[4] = width;
+        drawableCorners[5] = drawableCorners[7] = height;
+        drawableCenter[0] = width / 2;
+        drawableCenter[1] = height / 2;
+    }
+
+    /**
+     * @return the image scale at which the image fits the view width
+     */
+    float getLaidOutScale() {
+        return laidOutScale;
+    }
+
+    /**
+     * @return true if the image is higher than the view when it fits the view width
+     */
+    boolean isLongPhoto() {
+        return isLongPhoto;
+    }
+
+    void onDown() {
+        host.cancelSettle();
+    }
+
+    /**
+     * The up of a double tap, zoom to the next scale step at the tap.
+     */
+    boolean onDoubleTap(float x, float y) {
+        isDoubleTapping = true;
+        if (isCurrStepScale()) {
+            float scale = getNextStepValue() * laidOutScale;
+            animate2ZoomImage(scale, x, y);
+        } else {
+            animate2ZoomImage(laidOutScale, x, y);
+            scaleStepsIndex = 0;
+        }
+        return true;
+    }
+
+    private boolean isCurrStepScale() {
+        float scale = scaleX() * drawableWidth / viewWidth;
+        return Math.abs(scale - getCurrStepValue()) < 0.1;
+    }
+
+    private float getCurrStepValue() {
+        return scaleStepValues[((scaleStepsIndex) % scaleStepValues.length)];
+    }
+
+    private float getNextStepValue() {
+        return scaleStepValues[((++scaleStepsIndex) % scaleStepValues.length)];
+    }
+
+    /**
+     * @param y the y of the finger
+     */
+    boolean onSingleFingerScroll(float y, float distanceX, float distanceY) {
+        if (host.isInTransition()) {
+            return false;
+        }
+        if (isNew4SFScroll) {
+            initMotionY4Scroll = y;
+            isNew4SFScroll = false;
+        }
+        float currScale = scaleX();
+        float offset, cx, cy;
+        if (!isLongPhoto) {
+            updateImagePoints();
+            offset = getOffCenterDistance();
+            cx = imageCenter[0];
+            cy = imageCenter[1];
+        } else {
+            offset = getOverDistance(y);
+            cx = viewWidth / 2;
+            cy = viewHeight / 2;
+        }
+        if (offset < H_SPACE_THRESHOLD && currScale <= laidOutScale * 1.05) {
+            isInSFScrollChangeScale = true;
+            final float scale = (viewWidth - offset) / drawableWidth;
+            host.postScale(scale / currScale, cx, cy);
+        }
+        host.postTranslate(-distanceX, -distanceY);
+        return true;
+    }
+
+    private float getOverDistance(float currY) {
+        values();
+        float top = values.getTranslateY();
+        float bottom = top + values.getScaleY() * drawableHeight;
+        float dy = currY - initMotionY4Scroll;
+        float overTop = 300;
+        float overBottom = 300;
+
+        if (dy > 0) {
+            if (top >= 0) {
+                overTop = dy;
+            } else {
+                isInSFScrollChangeScale = false;
+            }
+        } else {
+            if (bottom <= viewHeight) {
+                overBottom = -dy;
+            } else {
+                isInSFScrollChangeScale = false;
+            }
+        }
+
+        return Math.min(overTop, overBottom);
+    }
+
+    boolean onMultiFingerScroll(float distanceX, float distanceY) {
+        if (host.isInTransition()) {
+            return false;
+        }
+        host.postTranslate(-distanceX, -distanceY);
+        return true;
+    }
+
+    boolean onFling(float velocityX, float velocityY) {
+        values();
+        final float h = values.getScaleY() * drawableHeight;
+        final float w = values.getScaleX() * drawableWidth;
+        final float hs = viewHeight - h;
+        final float ws = viewWidth - w;
+        final float cx = (viewWidth - w) / 2;
+        final float cy = (viewHeight - h) / 2;
+        if ((hs < 0 || ws < 0)
+                && !isDoubleTapping
+                && !isRotated()
+                && !host.isInTransition()
+                && !(isInSFScrollChangeScale && isLongPhoto)) {
+            if (host.fling(velocityX, velocityY,
+                    ws < 0 ? ws : cx,
+                    ws < 0 ? 0 : cx,
+                    hs < 0 ? hs : cy,
+                    hs < 0 ? 0 : cy)) {
+                isOnFling = true;
+            }
+        }
+        return hs < 0 || ws < 0;
+    }
+
+    void onFlingEnd() {
+        isOnFling = false;
+        animate2FitXYIfNeed(isLongPhoto, false);
+    }
+
+    void onFlingCancel() {
+        isOnFling = false;
+    }
+
+    boolean onScale(float scaleFactor, float focusX, float focusY) {
+        //the open or dismiss transition owns the image, the fingers would fight it every frame
+        if (host.isInTransition()) {
+            return false;
+        }
+        host.postScale(scaleFactor, focusX, focusY);
+        if (isNewEvent4Scale) {
+            firstScaleIsZoomOut = scaleX() < laidOutScale;
+            isNewEvent4Scale = false;
+        }
+        return true;
+    }
+
+    boolean onRotation(float deltaDegree, float cx, float cy) {
+        boolean rotatable = firstScaleIsZoomOut && !isLongPhoto && !host.isInTransition();
+        if (rotatable) {
+            host.postRotate(deltaDegree, cx, cy);
+        }
+        return rotatable;
+    }
+
+    boolean onUp() {
+        isNewEvent4Scale = true;
+        isNew4SFScroll = true;
+        isInSFScrollChangeScale = false;
+        if (!isDoubleTapping) {
+            values();
+            float scale = values.getScaleX();
+            if (scale * drawableWidth <= viewWidth - (H_SPACE_THRESHOLD - H_SPACE_CLOSE_WINDOW)) {
+                if (host.canDismiss()) {
+                    host.dismiss();
+                } else if (!isOnFling) {
+                    //if the init args not set, just animate to fit image view.
+                    animate2FitView(true);
+                }
+            } else if (!isOnFling) {
+                if ((Math.abs(values.getAngle()) > 10 || scale < laidOutScale) && !isLongPhoto) {
+                    animate2FitView(true);
+                } else {
+                    animate2FitXYIfNeed(scale < laidOutScale, true);
+                }
+            }
+            return true;
+        }
+        isDoubleTapping = false;
+        return false;
+    }
+
+    void onFitXYEnd() {
+        isFitXYUpdating = false;
+    }
+
+    private void animate2FitXYIfNeed(boolean fitWidth, boolean withGestureVelocity) {
+        values();
+        updateImagePoints();
+        final float h = values.getScaleY() * drawableHeight;
+        final float w = values.getScaleX() * drawableWidth;
+        boolean xNeed = true, yNeed = true;
+
+        float cy;
+        if (h > viewHeight) {
+            if (imageCorners[1] > 0) {
+                cy = h / 2;
+            } else if (imageCorners[5] < viewHeight) {
+                cy = viewHeight - h / 2;
+            } else {
+                cy = imageCenter[1];
+                yNeed = false;
+            }
+        } else {
+            cy = viewHeight / 2;
+        }
+
+        float cx;
+        if (w > viewWidth) {
+            if (imageCorners[0] > 0) {
+                cx = w / 2;
+            } else if (imageCorners[2] < viewWidth) {
+                cx = viewWidth - w / 2;
+            } else {
+                cx = imageCenter[0];
+                xNeed = false;
+            }
+        } else {
+            cx = viewWidth / 2;
+        }
+        if (!isFitXYUpdating) {
+            if (xNeed || yNeed) {
+                if (fitWidth) {
+                    animate2ZoomImage(laidOutScale, viewWidth / 2, viewHeight / 2);
+                    return;
+                }
+                SettleTarget target = this.target.reset();
+                target.hasTranslateX = xNeed;
+                target.translateX = cx;
+                target.hasTranslateY = yNeed;
+                target.translateY = cy;
+                target.withGestureVelocity = withGestureVelocity;
+                target.fitXY = true;
+                if (host.settle(target)) {
+                    isFitXYUpdating = true;
+                }
+            }
+        }
+    }
+
+    private void animate2FitView(boolean withGestureVelocity) {
+        float scale = viewWidth / drawableWidth;
+        float h = scale * drawableHeight;
+        float endTop = isLongPhoto ? 0 : (viewHeight - h) / 2;
+        SettleTarget target = this.target.reset();
+        target.hasScale = true;
+        target.scale = scale;
+        target.hasTranslateX = true;
+        target.translateX = viewWidth / 2;
+        target.hasTranslateY = true;
+        target.translateY = endTop + h / 2;
+        target.withGestureVelocity = withGestureVelocity;
+        host.settle(target);
+    }
+
+    private void animate2ZoomImage(float scale, float centerX, float centerY) {
+        SettleTarget target = this.target.reset();
+        target.hasScale = true;
+        target.scale = scale;
+        target.duration = ZOOM_DURATION;
+        if (scale == laidOutScale) {
+            if (!isLongPhoto) {
+                target.hasTranslateX = target.hasTranslateY = true;
+                target.translateX = viewWidth / 2;
+                target.translateY = viewHeight / 2;
+            } else {
+                checkOverScale2Fit4LongPhoto(centerX, centerY, target);
+                target.hasCenter = true;
+            }
+        } else {
+            target.hasCenter = true;
+        }
+        target.centerX = centerX;
+        target.centerY = centerY;
+        host.settle(target);
+    }
+
+    //only for targetScale = laidOutScale and isLongPhoto
+    private void checkOverScale2Fit4LongPhoto(float scx, float scy, SettleTarget out) {
+        values();
+        final float targetScale = laidOutScale;
+
+        final float imgLeft = values.getTranslateX();
+        final float imgTop = values.getTranslateY();
+
+        final float imgH = values.getScaleY() * drawableHeight;
+
+        final float toImgLeft = scx - imgLeft;
+
+        final float toImgTop = scy - imgTop;
+        final float toImgBottom = imgH - toImgTop;
+
+        final float currScaleX = values.getScaleX();
+        final float currScaleY = values.getScaleY();
+
+        final float scaled2Left = toImgLeft / currScaleX * targetScale;
+
+        final float scaled2Top = toImgTop / currScaleY * targetScale;
+        final float scaled2Bottom = toImgBottom / currScaleY * targetScale;
+
+        float targetY;
+        if (scaled2Top < scy) {
+            targetY = scaled2Top;
+        } else if (scaled2Bottom < (viewHeight - scy)) {
+            targetY = scy + ((viewHeight - scy) - scaled2Bottom);
+        } else {
+            targetY = scy;
+        }
+        out.hasTranslateX = out.hasTranslateY = true;
+        out.translateX = scaled2Left;
+        out.translateY = targetY;
+    }
+
+    private float getOffCenterDistance() {
+        return (float) Math.hypot(Math.abs(imageCenter[0] - viewWidth / 2),
+                Math.abs(imageCenter[1] - viewHeight / 2));
+    }
+
+    private boolean isRotated() {
+        return Math.abs(values().getAngle()) > 1;
+    }
+
+    private float scaleX() {
+        return values().getScaleX();
+    }
+
+    private MatrixValues values() {
+        return transform.decompose(values);
+    }
+
+    private void updateImagePoints() {
+        transform.mapPoints(imageCorners, 0, drawableCorners, 0, 4);
+        transform.mapPoints(imageCenter, 0, drawableCenter, 0, 1);
+    }
+}
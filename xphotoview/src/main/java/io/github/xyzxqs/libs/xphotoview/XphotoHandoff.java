@@ -0,0 +1,128 @@
+/*
+  Copyright 2017 xyzxqs (xyzxqs@gmail.com)
+  <p>
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+  <p>
+  http://www.apache.org/licenses/LICENSE-2.0
+  <p>
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands the thumbnail already shown in a grid over to the photo preview in the same process, so the
+ * open transition can start on the first frame instead of waiting for the image loader.
+ * <p>
+ * The grid lends a copy of the thumbnail with {@link #lend(String, Drawable)} when a photo is
+ * clicked, and the preview takes it with {@link XphotoView#setHandoffImage(String)}. The copy is
+ * owned by the registry until taken, which recycles it if it is not taken in time. Once taken it
+ * is shown by the {@link XphotoView} and kept by the image loader as the placeholder, so it is never
+ * recycled, the garbage collector frees it when both let it go. The original bitmap stays with its
+ * loader, which is free to reuse it at any time.
+ *
+ * @author xyzxqs (xyzxqs@gmail.com)
+ */
+
+public final class XphotoHandoff {
+
+    //the thumbnails which are lent but not taken yet, the eldest are dropped over this count
+    private static final int MAX_PENDING = 2;
+
+    private static final LinkedHashMap<String, Bitmap> pending = new LinkedHashMap<>();
+
+    private XphotoHandoff() {
+    }
+
+    /**
+     * Lend a copy of the drawable, such as the thumbnail of the clicked grid cell, to the preview
+     * of the given key.
+     *
+     * @param key      the key of the photo, such as its url
+     * @param drawable the drawable to copy, at its intrinsic size
+     * @return false if the drawable can not be copied
+     */
+    @MainThread
+    public static boolean lend(@NonNull String key, @Nullable Drawable drawable) {
+        Bitmap copy = copyOf(drawable);
+        if (copy == null) {
+            return false;
+        }
+        Bitmap old = pending.remove(key);
+        if (old != null) {
+            old.recycle();
+        }
+        pending.put(key, copy);
+
+        Iterator<Map.Entry<String, Bitmap>> it = pending.entrySet().iterator();
+        while (pending.size() > MAX_PENDING && it.hasNext()) {
+            it.next().getValue().recycle();
+            it.remove();
+        }
+        return true;
+    }
+
+    /**
+     * Take the thumbnail lent for the key, the caller owns it from now on.
+     *
+     * @return the thumbnail, or null if nothing is lent for the key
+     */
+    @MainThread
+    @Nullable
+    static Bitmap take(@NonNull String key) {
+        return pending.remove(key);
+    }
+
+    /**
+     * Release all the thumbnails which are lent but not taken.
+     */
+    @MainThread
+    public static void clear() {
+        for (Bitmap bitmap : pending.values()) {
+            bitmap.recycle();
+        }
+        pending.clear();
+    }
+
+    @Nullable
+    private static Bitmap copyOf(@Nullable Drawable drawable) {
+        if (drawable == null) {
+            return null;
+        }
+        final int width = drawable.getIntrinsicWidth();
+        final int height = drawable.getIntrinsicHeight();
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            return null;
+        }
+        //the drawable may be on screen, restore its bounds after
+        Rect bounds = drawable.copyBounds();
+        drawable.setBounds(0, 0, width, height);
+        drawable.draw(new Canvas(bitmap));
+        drawable.setBounds(bounds);
+        return bitmap;
+    }
+}
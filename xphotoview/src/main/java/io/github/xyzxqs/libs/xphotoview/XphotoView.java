@@ -16,17 +16,26 @@
 
 package io.github.xyzxqs.libs.xphotoview;
 
+import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Matrix;
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.view.ViewCompat;
-import android.support.v4.widget.ScrollerCompat;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
 
+import java.io.IOException;
+
 import io.github.xyzxqs.libs.xphotoview.GooglePhotosGestureDetector.GooglePhotosGestureListener;
 
 /**
@@ -51,38 +60,77 @@ public class XphotoView extends MatrixImageView {
         void onReqUpdateBgAlpha(float alpha);
     }
 
-    private static final float H_SPACE_CLOSE_WINDOW = 40;
-    private static final float H_SPACE_THRESHOLD = 200;
+    /**
+     * The image is shown at full quality.
+     */
+    public static final int IMAGE_QUALITY_FULL = 0;
+
+    /**
+     * The tiles out of the viewport and the tile cache are released.
+     */
+    public static final int IMAGE_QUALITY_TRIMMED = 1;
+
+    /**
+     * The finest level of detail is dropped too, zoomed in tiles are decoded at half resolution.
+     */
+    public static final int IMAGE_QUALITY_REDUCED = 2;
+
+    /**
+     * Only the subsampled base bitmap of the image is kept.
+     */
+    public static final int IMAGE_QUALITY_BASE = 3;
+
+    public interface OnImageQualityChangeListener {
+        /**
+         * notify that the image is degraded under memory pressure, or restored after it ends.
+         *
+         * @param oldQuality the quality before, one of {@link #IMAGE_QUALITY_FULL},
+         *                   {@link #IMAGE_QUALITY_TRIMMED}, {@link #IMAGE_QUALITY_REDUCED} and
+         *                   {@link #IMAGE_QUALITY_BASE}
+         * @param newQuality the quality now
+         */
+        void onImageQualityChanged(int oldQuality, int newQuality);
+    }
+
+    //no trim memory callback during this time means the memory pressure ends
+    private static final long MEMORY_RESTORE_DELAY_MS = 10000;
+
+    private static final int FLING_PREFETCH_MAX_STEPS = 4;
 
     private final GooglePhotosGestureDetector gestureDetector;
-    private final ScrollerCompat scrollerCompat;
+    //the zoom, pan, fling, dismiss and settle decisions of the gestures
+    private final XphotoGestureEngine gestureEngine;
+
+    //owns the only active animation of this view, see newAnimatorBuilder(int)
+    private final MatrixAnimationCoordinator animationCoordinator;
+    private final RectF visibleImageRect = new RectF();
 
     private Callback callback;
+    private OnImageQualityChangeListener imageQualityChangeListener;
+    private int imageQuality = IMAGE_QUALITY_FULL;
+    private ComponentCallbacks2 memoryCallbacks;
+
+    private TouchTraceRecorder touchTraceRecorder;
+
+    private final Runnable restoreImageQuality = new Runnable() {
+        @Override
+        public void run() {
+            if (getWindowVisibility() == VISIBLE) {
+                setImageQuality(IMAGE_QUALITY_FULL);
+            } else {
+                //do not decode in the background, wait for the window to show up again
+                postDelayed(this, MEMORY_RESTORE_DELAY_MS);
+            }
+        }
+    };
     private int initLeft;
     private int initTop;
     private int initWidth = 20;
     private int initHeight;
 
-    private float laidOutScaleX = 1;
-
-    private static final float[] scaleStepValues = {1f, 2f};
-    private int scaleStepsIndex = 0;
-
     private float backgroundAlpha = 1.0f;
 
-    private float initMotionY4Scroll;
-
-    //is new motion event for single finger scroll
-    private boolean isNew4SFScroll = true;
-    //is in single finger scroll to change scale state
-    private boolean isInSFScrollChangeScale = false;
     private boolean isClosing = false;
-    private boolean isNewEvent4Scale = true;
-    private boolean firstScaleIsZoomOut = true;
-    private boolean isLongPhoto = false;
-    private boolean isFitXYUpdating = false;
-    private boolean isOnFling = false;
-    private boolean isDoubleTapping = false;
 
     public XphotoView(Context context) {
         this(context, null);
@@ -96,9 +144,99 @@ public class XphotoView extends MatrixImageView {
         super(context, attrs, defStyleAttr);
         XphotoGestureListener gestureListener = new XphotoGestureListener();
         gestureDetector = new GooglePhotosGestureDetector(context, gestureListener);
-        scrollerCompat = ScrollerCompat.create(context);
+        gestureEngine = new XphotoGestureEngine(getImageTransform(), gestureListener);
+        animationCoordinator = new MatrixAnimationCoordinator(this);
     }
 
+    /**
+     * Drive the animations of this view by the given clock instead of the vsync of the main thread,
+     * for tests, benchmarks and replays.
+     */
+    void setFrameClock(@NonNull FrameClock frameClock) {
+        animationCoordinator.setFrameClock(frameClock);
+    }
+
+    /**
+     * @return the builder of the new animation, or null if a higher priority animation is running
+     */
+    @Nullable
+    private ImageMatrixAnimator.Builder newAnimatorBuilder(int priority) {
+        //a running fling is an animation too, it is cancelled when the new one is built
+        return animationCoordinator.newAnimation(priority);
+    }
+
+    private final ImageMatrixAnimator.AnimatorListener dismissListener =
+            new ImageMatrixAnimator.SimpleAnimatorListener() {
+                @Override
+                public void onAnimationStart(ImageMatrixAnimator animation) {
+                    isClosing = true;
+                }
+
+                @Override
+                public void onAnimationEnd(ImageMatrixAnimator animation) {
+                    if (callback != null) {
+                        callback.onPreviewDismissed();
+                    }
+                    animation.removeAnimatorListener(this);
+                }
+
+                @Override
+                public void onAnimationCancel(ImageMatrixAnimator animation) {
+                    //the shared animator goes on with other animations, the image stays open
+                    isClosing = false;
+                    animation.removeAnimatorListener(this);
+                    updateTiledViewport();
+                }
+            };
+
+    private final ImageMatrixAnimator.AnimatorListener fitXYListener =
+            new ImageMatrixAnimator.SimpleAnimatorListener() {
+                @Override
+                public void onAnimationEnd(ImageMatrixAnimator animation) {
+                    gestureEngine.onFitXYEnd();
+                }
+
+                @Override
+                public void onAnimationCancel(ImageMatrixAnimator animation) {
+                    gestureEngine.onFitXYEnd();
+                }
+            };
+
+    private final ImageMatrixAnimator.AnimatorListener flingListener =
+            new ImageMatrixAnimator.SimpleAnimatorListener() {
+                @Override
+                public void onAnimationEnd(ImageMatrixAnimator animation) {
+                    endTilePrefetch();
+                    gestureEngine.onFlingEnd();
+                }
+
+                @Override
+                public void onAnimationCancel(ImageMatrixAnimator animation) {
+                    endTilePrefetch();
+                    gestureEngine.onFlingCancel();
+                }
+            };
+
+    private final ImageMatrixAnimator.AnimatorListener openListener =
+            new ImageMatrixAnimator.SimpleAnimatorListener() {
+                @Override
+                public void onAnimationStart(ImageMatrixAnimator animation) {
+                    ViewCompat.setAlpha(XphotoView.this, 1.0f);
+                }
+
+                @Override
+                public void onAnimationEnd(ImageMatrixAnimator animation) {
+                    //the tiles are held back during the transition
+                    updateTiledViewport();
+                }
+
+                @Override
+                public void onAnimationCancel(ImageMatrixAnimator animation) {
+                    ViewCompat.setAlpha(XphotoView.this, 1.0f);
+                    updateTiledViewport();
+                }
+            };
+
     /**
      * Set the photo args for animation.
      * <p>
@@ -118,6 +256,306 @@ public class XphotoView extends MatrixImageView {
         this.callback = callback;
     }
 
+    /**
+     * Show the image file by decoding only the visible region of it, at the detail level of the
+     * current image scale. Use this for huge or long photos which are too big to be decoded as a
+     * single bitmap. The tiled image is recycled when it is replaced or by
+     * {@link #recycleTiledImage()}, a detached view only keeps its base bitmap.
+     * <p>
+     * Note: region decoding is only available since API 10.
+     *
+     * @param filePath the path of a JPEG or PNG file
+     * @return false if the image can not be tiled, then you may fall back to a subsampled bitmap
+     */
+    public boolean setTiledImage(@NonNull String filePath) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD_MR1) {
+            return false;
+        }
+        try {
+            setImageDrawable(TiledImageDrawable.open(filePath));
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "setTiledImage: " + filePath, e);
+            return false;
+        }
+    }
+
+    /**
+     * Show the thumbnail lent by {@link XphotoHandoff#lend(String, Drawable)} at once, so the open
+     * transition starts on the first layout. Load the full image after as usual, it is swapped in
+     * place when it arrives. The thumbnail is not recycled: the image loader may put its placeholder
+     * back into the view at any time, so it is left to the garbage collector once nothing holds it.
+     * <p>
+     * Note: an image loader may clear the view when it starts loading, pass the returned drawable
+     * to it as the placeholder.
+     *
+     * @param key the key the thumbnail is lent with, such as the url of the photo
+     * @return the drawable of the thumbnail, or null if nothing is lent for the key
+     */
+    @Nullable
+    public Drawable setHandoffImage(@NonNull String key) {
+        Bitmap bitmap = XphotoHandoff.take(key);
+        if (bitmap == null) {
+            return null;
+        }
+        Drawable drawable = new BitmapDrawable(getResources(), bitmap);
+        setImageDrawable(drawable);
+        return drawable;
+    }
+
+    @Override
+    public void setImageDrawable(@Nullable Drawable drawable) {
+        Drawable oldDrawable = getDrawable();
+        super.setImageDrawable(drawable);
+        if (oldDrawable != drawable && oldDrawable instanceof TiledImageDrawable) {
+            ((TiledImageDrawable) oldDrawable).recycle();
+        }
+        if (drawable instanceof TiledImageDrawable) {
+            ((TiledImageDrawable) drawable).setImageQuality(imageQuality);
+        }
+        updateTiledViewport();
+    }
+
+    @Override
+    protected void onImageDrawableSwapped(float sx, float sy) {
+        super.onImageDrawableSwapped(sx, sy);
+        gestureEngine.onDrawableSwapped(drawableIntrinsicWidth, drawableIntrinsicHeight, sx);
+        //the open transition or settle animation goes on with the new drawable
+        animationCoordinator.rescaleDrawable(sx, sy);
+    }
+
+    /**
+     * Listen to the quality changes of the image under memory pressure.
+     */
+    public void setOnImageQualityChangeListener(@Nullable OnImageQualityChangeListener listener) {
+        imageQualityChangeListener = listener;
+    }
+
+    /**
+     * @return the current image quality, see {@link OnImageQualityChangeListener}
+     */
+    public int getImageQuality() {
+        return imageQuality;
+    }
+
+    /**
+     * @return the image quality to degrade to for the memory trim level, see
+     * {@link ComponentCallbacks2#onTrimMemory(int)}
+     */
+    static int imageQualityForTrimLevel(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return IMAGE_QUALITY_BASE;
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return IMAGE_QUALITY_REDUCED;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return IMAGE_QUALITY_TRIMMED;
+        }
+        return IMAGE_QUALITY_FULL;
+    }
+
+    private void onMemoryPressure(int quality, int trimLevel) {
+        TileCache.getDefault().trimMemory(trimLevel);
+        //degrade at once, restore only when there is no more pressure for a while
+        if (quality > imageQuality) {
+            setImageQuality(quality);
+        }
+        if (imageQuality != IMAGE_QUALITY_FULL) {
+            removeCallbacks(restoreImageQuality);
+            postDelayed(restoreImageQuality, MEMORY_RESTORE_DELAY_MS);
+        }
+    }
+
+    private void setImageQuality(int quality) {
+        if (quality == imageQuality) {
+            return;
+        }
+        int oldQuality = imageQuality;
+        imageQuality = quality;
+        Drawable d = getDrawable();
+        if (d instanceof TiledImageDrawable) {
+            ((TiledImageDrawable) d).setImageQuality(quality);
+            updateTiledViewport();
+        }
+        if (imageQualityChangeListener != null) {
+            imageQualityChangeListener.onImageQualityChanged(oldQuality, quality);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            if (memoryCallbacks == null) {
+                memoryCallbacks = new ComponentCallbacks2() {
+                    @Override
+                    public void onTrimMemory(int level) {
+                        onMemoryPressure(imageQualityForTrimLevel(level), level);
+                    }
+
+                    @Override
+                    public void onConfigurationChanged(Configuration newConfig) {
+                    }
+
+                    @Override
+                    public void onLowMemory() {
+                        onMemoryPressure(IMAGE_QUALITY_BASE, ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+                    }
+                };
+            }
+            getContext().getApplicationContext().registerComponentCallbacks(memoryCallbacks);
+        }
+        //bring back the tiles released when it was detached
+        updateTiledViewport();
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (memoryCallbacks != null) {
+            getContext().getApplicationContext().unregisterComponentCallbacks(memoryCallbacks);
+        }
+        removeCallbacks(restoreImageQuality);
+        gestureDetector.release();
+        Drawable d = getDrawable();
+        if (d instanceof TiledImageDrawable) {
+            //the view may be attached again, such as a page of a pager
+            ((TiledImageDrawable) d).trim();
+        }
+    }
+
+    /**
+     * Release the tiled image set by {@link #setTiledImage(String)} for good, such as when the
+     * activity is destroyed. It draws nothing after.
+     */
+    public void recycleTiledImage() {
+        Drawable d = getDrawable();
+        if (d instanceof TiledImageDrawable) {
+            ((TiledImageDrawable) d).recycle();
+        }
+    }
+
+    private void updateTiledViewport() {
+        Drawable d = getDrawable();
+        if (d instanceof TiledImageDrawable && hasLaidOut) {
+            getVisibleImageRect(visibleImageRect);
+            ((TiledImageDrawable) d).updateViewport(visibleImageRect, getImageScaleX(),
+                    isClosing || animationCoordinator.isAnimating(MatrixAnimationCoordinator.PRIORITY_TRANSITION));
+        }
+    }
+
+    /**
+     * Decode the tiles along the path of the fling and at its rest position ahead of time, so the
+     * image is sharp when the fling stops.
+     */
+    private void prefetchFlingPath(@Nullable MatrixFling fling) {
+        Drawable d = getDrawable();
+        if (fling == null || !(d instanceof TiledImageDrawable) || !hasLaidOut) {
+            return;
+        }
+        final float dx = fling.getFinalX() - getImageTranslateX();
+        final float dy = fling.getFinalY() - getImageTranslateY();
+        //about one step per viewport travelled, the rest position is always included
+        final int steps = Math.max(1, Math.min(FLING_PREFETCH_MAX_STEPS,
+                (int) Math.ceil(Math.max(Math.abs(dx) / imageViewWidth, Math.abs(dy) / imageViewHeight))));
+        for (int i = 1; i <= steps; i++) {
+            final float fraction = (float) i / steps;
+            if (getVisibleImageRect(dx * fraction, dy * fraction, visibleImageRect)) {
+                ((TiledImageDrawable) d).prefetch(visibleImageRect);
+            }
+        }
+    }
+
+    private void endTilePrefetch() {
+        Drawable d = getDrawable();
+        if (d instanceof TiledImageDrawable) {
+            ((TiledImageDrawable) d).endPrefetch();
+            updateTiledViewport();
+        }
+    }
+
+    /**
+     * @return the count of the prefetched tiles of a tiled image which were loaded when they came
+     * into view, see {@link #setTiledImage(String)}
+     */
+    public int getTilePrefetchHitCount() {
+        Drawable d = getDrawable();
+        return d instanceof TiledImageDrawable ? ((TiledImageDrawable) d).getPrefetchHitCount() : 0;
+    }
+
+    /**
+     * @return the count of the tiles of a tiled image which came into view during a fling before
+     * they were loaded
+     */
+    public int getTilePrefetchMissCount() {
+        Drawable d = getDrawable();
+        return d instanceof TiledImageDrawable ? ((TiledImageDrawable) d).getPrefetchMissCount() : 0;
+    }
+
+    /**
+     * @return the bytes the tiled image in memory saves by being decoded to RGB_565 where it is
+     * opaque and not zoomed to full resolution, see {@link #setTiledImage(String)}
+     */
+    public long getTiledImageBytesSaved() {
+        Drawable d = getDrawable();
+        return d instanceof TiledImageDrawable ? ((TiledImageDrawable) d).getBytesSaved() : 0;
+    }
+
+    /**
+     * Record the touch events of this view into a trace, to replay a gesture which janks.
+     *
+     * @param recorder the recorder, or null to stop recording, the recorder is not closed
+     */
+    public void setTouchTraceRecorder(@Nullable TouchTraceRecorder recorder) {
+        touchTraceRecorder = recorder;
+    }
+
+    /**
+     * Let pan, pinch and rotation run a little ahead of the touch events, so the image does not
+     * trail the fingers on high refresh rate screens.
+     *
+     * @param leadTime how far ahead to predict in milliseconds, about two frame intervals is a good
+     *                 start, 0 (the default) to disable
+     */
+    public void setTouchPredictionLeadTime(long leadTime) {
+        gestureDetector.setPredictionLeadTime(leadTime);
+    }
+
+    /**
+     * @return the mean distance in pixels between the predicted and the real focus of the fingers,
+     * see {@link #setTouchPredictionLeadTime(long)}
+     */
+    public float getTouchPredictionMeanError() {
+        return gestureDetector.getPredictionMeanError();
+    }
+
+    /**
+     * @return the max distance in pixels between the predicted and the real focus of the fingers
+     */
+    public float getTouchPredictionMaxError() {
+        return gestureDetector.getPredictionMaxError();
+    }
+
+    /**
+     * @return how many predictions the errors are measured over
+     */
+    public int getTouchPredictionErrorCount() {
+        return gestureDetector.getPredictionErrorCount();
+    }
+
+    public void resetTouchPredictionErrors() {
+        gestureDetector.resetPredictionErrors();
+    }
+
+    public void resetTilePrefetchCounters() {
+        Drawable d = getDrawable();
+        if (d instanceof TiledImageDrawable) {
+            ((TiledImageDrawable) d).resetPrefetchCounters();
+        }
+    }
+
     private boolean initArgsHasSet() {
         //if callback == null, init args not set.
         return callback != null;
@@ -132,28 +570,19 @@ public class XphotoView extends MatrixImageView {
      */
     public void dismissPreview() {
         if (initArgsHasSet()) {
-            new ImageMatrixAnimator.Builder(this)
-                    .toRotate(0)
+            ImageMatrixAnimator.Builder builder =
+                    newAnimatorBuilder(MatrixAnimationCoordinator.PRIORITY_TRANSITION);
+            if (builder == null) {
+                return;
+            }
+            builder.toRotate(0)
                     .toTranslateX(initLeft + initWidth / 2)
                     .toTranslateY(initTop + initHeight / 2)
                     .toScaleX(initWidth / drawableIntrinsicWidth)
                     .toScaleY(initHeight / drawableIntrinsicHeight)
                     .duration(300)
                     .build()
-                    .addAnimatorListener(new ImageMatrixAnimator.SimpleAnimatorListener() {
-                        @Override
-                        public void onAnimationStart(ImageMatrixAnimator animation) {
-                            isClosing = true;
-                        }
-
-                        @Override
-                        public void onAnimationEnd(ImageMatrixAnimator animation) {
-                            if (callback != null) {
-                                callback.onPreviewDismissed();
-                            }
-                            animation.removeAnimatorListener(this);
-                        }
-                    })
+                    .addAnimatorListener(dismissListener)
                     .start();
         } else {
             Log.w(TAG, "dismissPreview: ", new Throwable("no init args set, skip..."));
@@ -163,17 +592,16 @@ public class XphotoView extends MatrixImageView {
     @Override
     protected void onImageLaidOut() {
         super.onImageLaidOut();
-        laidOutScaleX = imageViewWidth / drawableIntrinsicWidth;
-        isLongPhoto = laidOutScaleX * drawableIntrinsicHeight > imageViewHeight;
+        gestureEngine.setLayout(imageViewWidth, imageViewHeight, drawableIntrinsicWidth, drawableIntrinsicHeight);
         if (initArgsHasSet()) {
             ViewCompat.setAlpha(this, 0.0f);
             animateRect2FitView(initLeft, initTop, initWidth, initHeight);
         } else {
             scaleImageAtPosition(imageViewWidth / drawableIntrinsicWidth, 0, 0);
             float dx = 0;
-            float dy = isLongPhoto ?
+            float dy = gestureEngine.isLongPhoto() ?
                     0
-                    : (imageViewHeight - laidOutScaleX * drawableIntrinsicHeight) / 2;
+                    : (imageViewHeight - gestureEngine.getLaidOutScale() * drawableIntrinsicHeight) / 2;
             translateImageToPosition(dx, dy);
         }
     }
@@ -181,10 +609,11 @@ public class XphotoView extends MatrixImageView {
     @Override
     protected void onImageMatrixUpdated(Matrix imageMatrix) {
         super.onImageMatrixUpdated(imageMatrix);
+        updateTiledViewport();
         float scale = getImageScaleX();
         if (isClosing) {
             updateAlpha(calculateClosingAlpha());
-        } else if (hasLaidOut && scale <= laidOutScaleX) {
+        } else if (hasLaidOut && scale <= gestureEngine.getLaidOutScale()) {
             backgroundAlpha = calculateBackgroundAlpha();
             updateAlpha(backgroundAlpha);
         }
@@ -207,10 +636,10 @@ public class XphotoView extends MatrixImageView {
         float offCenterDistance = getOffCenterDistance();
 
         float dx = 300 - offCenterDistance;
-        float scaleAlpha = scale / laidOutScaleX;
+        float scaleAlpha = scale / gestureEngine.getLaidOutScale();
         float distanceAlpha = (offCenterDistance > 30 ? (dx > 30 ? dx : 30) : 300) / 300;
 
-        return isLongPhoto ? scaleAlpha : Math.min(scaleAlpha, distanceAlpha);
+        return gestureEngine.isLongPhoto() ? scaleAlpha : Math.min(scaleAlpha, distanceAlpha);
     }
 
     private float getOffCenterDistance() {
@@ -218,98 +647,37 @@ public class XphotoView extends MatrixImageView {
                 Math.abs(imageCenter[1] - imageViewHeight / 2));
     }
 
-    @Override
-    public void computeScroll() {
-        if (isOnFling && !isClosing && !isRotated()) {
-            if (isDoubleTapping) {
-                scrollerCompat.abortAnimation();
-                isOnFling = false;
-                return;
-            }
-            if (scrollerCompat.computeScrollOffset()) {
-                float x = scrollerCompat.getCurrX();
-                float y = scrollerCompat.getCurrY();
-                translateImageToPosition(x, y);
-                invalidate();
-            } else {
-                isOnFling = false;
-                animate2FitXYIfNeed(isLongPhoto);
-            }
-        }
-    }
-
     private boolean isRotated() {
         return Math.abs(getImageAngle()) > 1;
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        return gestureDetector.onTouchEvent(event) | super.onTouchEvent(event);
-    }
-
-    private void animate2FitXYIfNeed(final boolean fitWidth) {
-        final float h = getImageScaleY() * drawableIntrinsicHeight;
-        final float w = getImageScaleX() * drawableIntrinsicWidth;
-        boolean xNeed = true, yNeed = true;
-
-        float cy;
-        if (h > imageViewHeight) {
-            if (imageCorners[1] > 0) {
-                cy = h / 2;
-            } else if (imageCorners[5] < imageViewHeight) {
-                cy = imageViewHeight - h / 2;
-            } else {
-                cy = imageCenter[1];
-                yNeed = false;
-            }
-        } else {
-            cy = imageViewHeight / 2;
+        if (touchTraceRecorder != null) {
+            touchTraceRecorder.record(event);
         }
-
-        float cx;
-        if (w > imageViewWidth) {
-            if (imageCorners[0] > 0) {
-                cx = w / 2;
-            } else if (imageCorners[2] < imageViewWidth) {
-                cx = imageViewWidth - w / 2;
-            } else {
-                cx = imageCenter[0];
-                xNeed = false;
-            }
-        } else {
-            cx = imageViewWidth / 2;
-        }
-        if (!isFitXYUpdating) {
-            if (xNeed || yNeed) {
-                if (fitWidth) {
-                    animate2ZoomImage(laidOutScaleX, imageViewWidth / 2, imageViewHeight / 2);
-                    return;
-                }
-                isFitXYUpdating = true;
-                ImageMatrixAnimator.Builder builder = new ImageMatrixAnimator.Builder(this);
-                builder.toRotate(0);
-                if (xNeed) builder.toTranslateX(cx);
-                if (yNeed) builder.toTranslateY(cy);
-                builder.duration(200)
-                        .build()
-                        .addAnimatorListener(new ImageMatrixAnimator.SimpleAnimatorListener() {
-                            @Override
-                            public void onAnimationEnd(ImageMatrixAnimator animation) {
-                                isFitXYUpdating = false;
-                            }
-                        })
-                        .start();
-            }
+        boolean handled;
+        //all the scale, rotate and translate of one event end up as a single matrix update
+        beginTransaction();
+        try {
+            handled = gestureDetector.onTouchEvent(event);
+        } finally {
+            commitTransaction();
         }
+        return handled | super.onTouchEvent(event);
     }
 
     private void animateRect2FitView(int initLeft, int initTop, int initWidth, int initHeight) {
-        float h = laidOutScaleX * drawableIntrinsicHeight;
+        float h = gestureEngine.getLaidOutScale() * drawableIntrinsicHeight;
         float endLeft = 0;
-        float endTop = isLongPhoto ? 0 : (imageViewHeight - h) / 2;
+        float endTop = gestureEngine.isLongPhoto() ? 0 : (imageViewHeight - h) / 2;
 
-        new ImageMatrixAnimator.Builder(this)
-                .fromTranslateX(initLeft + initWidth / 2)
+        ImageMatrixAnimator.Builder builder =
+                newAnimatorBuilder(MatrixAnimationCoordinator.PRIORITY_TRANSITION);
+        if (builder == null) {
+            return;
+        }
+        builder.fromTranslateX(initLeft + initWidth / 2)
                 .fromTranslateY(initTop + initHeight / 2)
                 .fromScaleX(initWidth / drawableIntrinsicWidth)
                 .fromScaleY(initHeight / drawableIntrinsicHeight)
@@ -320,259 +688,157 @@ public class XphotoView extends MatrixImageView {
                 .toRotate(0)
                 .duration(300)
                 .build()
-                .addAnimatorListener(new ImageMatrixAnimator.SimpleAnimatorListener() {
-                    @Override
-                    public void onAnimationStart(ImageMatrixAnimator animation) {
-                        ViewCompat.setAlpha(XphotoView.this, 1.0f);
-                    }
-                })
-                .start();
-    }
-
-    private void animate2FitView() {
-        float h = imageViewWidth / drawableIntrinsicWidth * drawableIntrinsicHeight;
-        float endTop = isLongPhoto ? 0 : (imageViewHeight - h) / 2;
-        new ImageMatrixAnimator.Builder(this)
-                .toRotate(0)
-                .toTranslateX(imageViewWidth / 2)
-                .toTranslateY(endTop + h / 2)
-                .toScaleX(imageViewWidth / drawableIntrinsicWidth)
-                .toScaleY(imageViewWidth / drawableIntrinsicWidth)
-                .duration(250)
-                .build()
+                .addAnimatorListener(openListener)
                 .start();
     }
 
-    private void animate2ZoomImage(final float scale, float centerX, float centerY) {
-        final ImageMatrixAnimator.Builder builder = new ImageMatrixAnimator.Builder(this)
-                .toScaleX(scale)
-                .toScaleY(scale)
-                .toRotate(0)
-                .duration(220);
-        if (scale == laidOutScaleX) {
-            if (!isLongPhoto) {
-                builder.toTranslateX(imageViewWidth / 2)
-                        .toTranslateY(imageViewHeight / 2);
-            } else {
-                checkOverScale2Fit4LongPhoto(centerX, centerY, new CheckOverScaleCallback() {
-                    @Override
-                    public void theResult(float scx, float scy) {
-                        builder.toTranslateX(scx);
-                        builder.toTranslateY(scy);
-                    }
-                });
-                builder.setAnimCenter(centerX, centerY);
-            }
-        } else {
-            builder.setAnimCenter(centerX, centerY);
+    /**
+     * Let the settle spring continue with the velocity of the fingers when the gesture ended.
+     */
+    private void seedGestureVelocity(ImageMatrixAnimator.Builder builder) {
+        builder.translateVelocity(gestureDetector.getVelocityX(), gestureDetector.getVelocityY())
+                .scaleVelocity(gestureDetector.getScaleVelocity() * getImageScaleX());
+        if (isRotated()) {
+            builder.angleVelocity(gestureDetector.getAngleVelocity());
         }
-        builder.build()
-                .start();
     }
 
-    private interface CheckOverScaleCallback {
-        void theResult(float scx, float scy);
-    }
-
-    //only for targetScale = laidOutScaleX and isLongPhoto
-    private void checkOverScale2Fit4LongPhoto(float scx,
-                                              float scy,
-                                              CheckOverScaleCallback overScaledCallback) {
-
-        final float targetScale = laidOutScaleX;
-
-        final float imgLeft = getImageTranslateX();
-        final float imgTop = getImageTranslateY();
-
-        final float imgH = getImageScaleY() * drawableIntrinsicHeight;
+    private class XphotoGestureListener implements GooglePhotosGestureListener, XphotoGestureEngine.Host {
 
-        final float toImgLeft = scx - imgLeft;
-
-        final float toImgTop = scy - imgTop;
-        final float toImgBottom = imgH - toImgTop;
+        @Override
+        public boolean onDoubleTapEvent(MotionEvent e) {
+            return e.getActionMasked() == MotionEvent.ACTION_UP && gestureEngine.onDoubleTap(e.getX(), e.getY());
+        }
 
-        final float currScaleX = getImageScaleX();
-        final float currScaleY = getImageScaleY();
+        @Override
+        public boolean onSingleFingerScroll(MotionEvent e, float distanceX, float distanceY) {
+            return gestureEngine.onSingleFingerScroll(e.getY(), distanceX, distanceY);
+        }
 
-        final float scaled2Left = toImgLeft / currScaleX * targetScale;
+        @Override
+        public boolean onMultiFingerScroll(MotionEvent e, float distanceX, float distanceY) {
+            return gestureEngine.onMultiFingerScroll(distanceX, distanceY);
+        }
 
-        final float scaled2Top = toImgTop / currScaleY * targetScale;
-        final float scaled2Bottom = toImgBottom / currScaleY * targetScale;
+        @Override
+        public boolean onFling(MotionEvent e, float velocityX, float velocityY) {
+            return gestureEngine.onFling(velocityX, velocityY);
+        }
 
-        float targetY;
-        if (scaled2Top < scy) {
-            targetY = scaled2Top;
-        } else if (scaled2Bottom < (imageViewHeight - scy)) {
-            targetY = scy + ((imageViewHeight - scy) - scaled2Bottom);
-        } else {
-            targetY = scy;
+        @Override
+        public boolean onScale(float scaleFactor, float focusX, float focusY) {
+            return gestureEngine.onScale(scaleFactor, focusX, focusY);
         }
-        overScaledCallback.theResult(scaled2Left, targetY);
-    }
 
-    private class XphotoGestureListener implements GooglePhotosGestureListener {
+        @Override
+        public boolean onRotation(float deltaDegree, float cx, float cy) {
+            return gestureEngine.onRotation(deltaDegree, cx, cy);
+        }
 
         @Override
-        public boolean onDoubleTapEvent(MotionEvent e) {
-            if (e.getActionMasked() == MotionEvent.ACTION_UP) {
-                isDoubleTapping = true;
-                if (isCurrStepScale()) {
-                    float scale = getNextStepValue() * laidOutScaleX;
-                    animate2ZoomImage(scale, e.getX(), e.getY());
-                } else {
-                    animate2ZoomImage(laidOutScaleX, e.getX(), e.getY());
-                    scaleStepsIndex = 0;
-                }
-                return true;
+        public boolean onPredictionTransform(@NonNull AffineMatrix delta) {
+            if (isInTransition()) {
+                return false;
             }
-            return false;
+            postTransform(delta);
+            return true;
         }
 
-        private boolean isCurrStepScale() {
-            float scale = getImageScaleX() * drawableIntrinsicWidth / imageViewWidth;
-            return Math.abs(scale - getCurrStepValue()) < 0.1;
+        @Override
+        public void onActionDown(MotionEvent event) {
+            gestureEngine.onDown();
         }
 
-        private float getCurrStepValue() {
-            return scaleStepValues[((scaleStepsIndex) % scaleStepValues.length)];
+        @Override
+        public boolean onActionUp(MotionEvent event) {
+            return gestureEngine.onUp();
         }
 
-        private float getNextStepValue() {
-            return scaleStepValues[((++scaleStepsIndex) % scaleStepValues.length)];
+        @Override
+        public void postTranslate(float deltaX, float deltaY) {
+            XphotoView.this.postTranslate(deltaX, deltaY);
         }
 
         @Override
-        public boolean onSingleFingerScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
-            if (isNew4SFScroll) {
-                initMotionY4Scroll = e2.getY();
-                isNew4SFScroll = false;
-            }
-            float currScale = getImageScaleX();
-            float offset, cx, cy;
-            if (!isLongPhoto) {
-                offset = getOffCenterDistance();
-                cx = imageCenter[0];
-                cy = imageCenter[1];
-            } else {
-                offset = getOverDistance(e2.getY());
-                cx = imageViewWidth / 2;
-                cy = imageViewHeight / 2;
-            }
-            if (offset < H_SPACE_THRESHOLD && currScale <= laidOutScaleX * 1.05) {
-                isInSFScrollChangeScale = true;
-                final float scale = (imageViewWidth - offset) / drawableIntrinsicWidth;
-                scaleImageAtPosition(scale, cx, cy);
-            }
-            postTranslate(-distanceX, -distanceY);
-            return true;
+        public void postScale(float deltaScale, float px, float py) {
+            XphotoView.this.postScale(deltaScale, px, py);
         }
 
-        private float getOverDistance(float currY) {
-            float top = getImageTranslateY();
-            float bottom = top + getImageScaleY() * drawableIntrinsicHeight;
-            float dy = currY - initMotionY4Scroll;
-            float overTop = 300;
-            float overBottom = 300;
-
-            if (dy > 0) {
-                if (top >= 0) {
-                    overTop = dy;
-                } else {
-                    isInSFScrollChangeScale = false;
-                }
-            } else {
-                if (bottom <= imageViewHeight) {
-                    overBottom = -dy;
-                } else {
-                    isInSFScrollChangeScale = false;
-                }
-            }
-
-            return Math.min(overTop, overBottom);
+        @Override
+        public void postRotate(float deltaDegrees, float px, float py) {
+            XphotoView.this.postRotate(deltaDegrees, px, py);
         }
 
         @Override
-        public boolean onMultiFingerScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
-            postTranslate(-distanceX, -distanceY);
-            return true;
+        public void cancelSettle() {
+            //the finger takes over the image matrix from settle animations and fling
+            animationCoordinator.cancel(MatrixAnimationCoordinator.PRIORITY_SETTLE);
         }
 
         @Override
-        public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
-            final float h = getImageScaleY() * drawableIntrinsicHeight;
-            final float w = getImageScaleX() * drawableIntrinsicWidth;
-            int hs = (int) (imageViewHeight - h);
-            int ws = (int) (imageViewWidth - w);
-            int cx = (int) ((imageViewWidth - w) / 2);
-            int cy = (int) ((imageViewHeight - h) / 2);
-            if ((hs < 0 || ws < 0)
-                    && !isDoubleTapping
-                    && !isRotated()
-                    && !(isInSFScrollChangeScale && isLongPhoto)) {
-                scrollerCompat.fling((int) getImageTranslateX(), (int) getImageTranslateY(),
-                        (int) velocityX,
-                        (int) velocityY,
-                        ws < 0 ? ws : cx,
-                        ws < 0 ? 0 : cx,
-                        hs < 0 ? hs : cy,
-                        hs < 0 ? 0 : cy,
-                        80,
-                        80);
-                isOnFling = true;
-                invalidate();
+        public boolean settle(@NonNull XphotoGestureEngine.SettleTarget target) {
+            ImageMatrixAnimator.Builder builder =
+                    newAnimatorBuilder(MatrixAnimationCoordinator.PRIORITY_SETTLE);
+            if (builder == null) {
+                return false;
+            }
+            builder.toRotate(0);
+            if (target.hasScale) {
+                builder.toScaleX(target.scale)
+                        .toScaleY(target.scale);
             }
-            return hs < 0 || ws < 0;
+            if (target.hasTranslateX) builder.toTranslateX(target.translateX);
+            if (target.hasTranslateY) builder.toTranslateY(target.translateY);
+            if (target.hasCenter) {
+                builder.setAnimCenter(target.centerX, target.centerY);
+            }
+            if (target.duration > 0) {
+                builder.duration(target.duration);
+            } else {
+                builder.spring(MatrixSpring.DEFAULT_STIFFNESS);
+            }
+            if (target.withGestureVelocity) {
+                seedGestureVelocity(builder);
+            }
+            ImageMatrixAnimator animator = builder.build();
+            if (target.fitXY) {
+                animator.addAnimatorListener(fitXYListener);
+            }
+            animator.start();
+            return true;
         }
 
         @Override
-        public boolean onScale(float scaleFactor, float focusX, float focusY) {
-            postScale(scaleFactor, focusX, focusY);
-            if (isNewEvent4Scale) {
-                firstScaleIsZoomOut = getImageScaleX() < laidOutScaleX;
-                isNewEvent4Scale = false;
+        public boolean fling(float velocityX, float velocityY,
+                             float minX, float maxX, float minY, float maxY) {
+            ImageMatrixAnimator.Builder builder =
+                    newAnimatorBuilder(MatrixAnimationCoordinator.PRIORITY_SETTLE);
+            if (builder == null) {
+                return false;
             }
+            builder.fling(velocityX, velocityY, minX, maxX, minY, maxY,
+                    XphotoGestureEngine.FLING_OVER_SCROLL,
+                    XphotoGestureEngine.FLING_OVER_SCROLL);
+            ImageMatrixAnimator animator = builder.build();
+            prefetchFlingPath(animator.getFling());
+            animator.addAnimatorListener(flingListener)
+                    .start();
             return true;
         }
 
         @Override
-        public boolean onRotation(float deltaDegree, float cx, float cy) {
-            boolean rotatable = firstScaleIsZoomOut && !isLongPhoto;
-            if (rotatable) {
-                postRotate(deltaDegree, cx, cy);
-            }
-            return rotatable;
+        public boolean canDismiss() {
+            return initArgsHasSet();
         }
 
         @Override
-        public void onActionDown(MotionEvent event) {
-            scrollerCompat.abortAnimation();
+        public void dismiss() {
+            dismissPreview();
         }
 
         @Override
-        public boolean onActionUp(MotionEvent event) {
-            isNewEvent4Scale = true;
-            isNew4SFScroll = true;
-            isInSFScrollChangeScale = false;
-            if (!isDoubleTapping) {
-                float scale = getImageScaleX();
-                if (scale * drawableIntrinsicWidth <= imageViewWidth - (H_SPACE_THRESHOLD - H_SPACE_CLOSE_WINDOW)) {
-                    if (initArgsHasSet()) {
-                        dismissPreview();
-                    } else if (!isOnFling) {
-                        //if the init args not set, just animate to fit image view.
-                        animate2FitView();
-                    }
-                } else if (!isOnFling) {
-                    if ((Math.abs(getImageAngle()) > 10 || scale < laidOutScaleX) && !isLongPhoto) {
-                        animate2FitView();
-                    } else {
-                        animate2FitXYIfNeed(scale < laidOutScaleX);
-                    }
-                }
-                return true;
-            }
-            isDoubleTapping = false;
-            return false;
+        public boolean isInTransition() {
+            return animationCoordinator.isAnimating(MatrixAnimationCoordinator.PRIORITY_TRANSITION);
         }
     }
 }
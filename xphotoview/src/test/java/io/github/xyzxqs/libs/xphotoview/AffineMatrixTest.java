@@ -0,0 +1,148 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link AffineMatrix}, which need no android runtime.
+ */
+public class AffineMatrixTest {
+
+    private static final float EPSILON = 1e-3f;
+
+    @Test
+    public void postScale_keepsPivotFixed() throws Exception {
+        AffineMatrix m = new AffineMatrix();
+        m.postTranslate(10, 20);
+        m.postScale(3, 2, 50, 60);
+        assertEquals(50, m.mapX(40, 40), EPSILON);
+        assertEquals(60, m.mapY(40, 40), EPSILON);
+        assertEquals(3, m.values[AffineMatrix.SCALE_X], 0);
+        assertEquals(2, m.values[AffineMatrix.SCALE_Y], 0);
+    }
+
+    @Test
+    public void postRotate_rightAngleIsExact() throws Exception {
+        AffineMatrix m = new AffineMatrix();
+        m.postRotate(90);
+        assertArrayEquals(new float[]{0, -1, 0, 1, 0, 0}, m.values, 0);
+
+        m.reset();
+        m.postRotate(90, 10, 10);
+        float[] dst = new float[2];
+        m.mapPoints(dst, new float[]{20, 10});
+        assertArrayEquals(new float[]{10, 20}, dst, 0);
+    }
+
+    @Test
+    public void decompose_returnsPostedValues() throws Exception {
+        AffineMatrix m = new AffineMatrix();
+        m.postScale(2.5f, 2.5f);
+        m.postRotate(30);
+        m.postTranslate(-7, 11);
+
+        MatrixValues values = m.decompose(new MatrixValues());
+        assertEquals(2.5f, values.getScaleX(), EPSILON);
+        assertEquals(2.5f, values.getScaleY(), EPSILON);
+        assertEquals(30, values.getAngle(), EPSILON);
+        assertEquals(-7, values.getTranslateX(), 0);
+        assertEquals(11, values.getTranslateY(), 0);
+    }
+
+    @Test
+    public void invert_roundTrip() throws Exception {
+        Random random = new Random(3);
+        AffineMatrix m = new AffineMatrix();
+        AffineMatrix inverse = new AffineMatrix();
+        float[] src = new float[2];
+        float[] mapped = new float[2];
+        float[] back = new float[2];
+        for (int i = 0; i < 1000; i++) {
+            m.reset();
+            m.postScale(0.1f + random.nextFloat() * 5, 0.1f + random.nextFloat() * 5,
+                    random.nextFloat() * 100, random.nextFloat() * 100);
+            m.postRotate(random.nextFloat() * 360, random.nextFloat() * 100, random.nextFloat() * 100);
+            m.postTranslate(random.nextFloat() * 1000, random.nextFloat() * 1000);
+            assertTrue(m.invert(inverse));
+
+            src[0] = random.nextFloat() * 1000;
+            src[1] = random.nextFloat() * 1000;
+            m.mapPoints(mapped, src);
+            inverse.mapPoints(back, mapped);
+            assertArrayEquals(src, back, 0.05f);
+        }
+    }
+
+    @Test
+    public void invert_singularIsRejected() throws Exception {
+        AffineMatrix m = new AffineMatrix();
+        m.postScale(0, 1);
+        AffineMatrix inverse = new AffineMatrix();
+        inverse.postTranslate(1, 1);
+        assertFalse(m.invert(inverse));
+        assertEquals(1, inverse.values[AffineMatrix.TRANS_X], 0);
+    }
+
+    @Test
+    public void mapPoints_withOffsets() throws Exception {
+        AffineMatrix m = new AffineMatrix();
+        m.postScale(2, 3);
+        m.postTranslate(1, 1);
+        float[] dst = new float[6];
+        m.mapPoints(dst, 2, new float[]{9, 9, 1, 1, 2, 2}, 2, 2);
+        assertArrayEquals(new float[]{0, 0, 3, 4, 5, 7}, dst, 0);
+    }
+
+    @Test
+    public void postConcat_matchesPostChain() throws Exception {
+        AffineMatrix expected = new AffineMatrix();
+        expected.postScale(1.5f, 1.5f, 10, 20);
+        expected.postRotate(30, 100, 50);
+        AffineMatrix actual = new AffineMatrix();
+        actual.set(expected);
+
+        AffineMatrix delta = new AffineMatrix();
+        delta.setPivotTransform(1.1f, 1.1f, -4, 300, 400, 310, 395);
+        expected.postScale(1.1f, 1.1f, 300, 400);
+        expected.postRotate(-4, 300, 400);
+        expected.postTranslate(10, -5);
+        actual.postConcat(delta);
+        assertArrayEquals(expected.values, actual.values, EPSILON);
+    }
+
+    @Test
+    public void postConcat_inverseTakesPredictionBack() throws Exception {
+        Random random = new Random(5);
+        AffineMatrix image = new AffineMatrix();
+        AffineMatrix prediction = new AffineMatrix();
+        AffineMatrix inverse = new AffineMatrix();
+        for (int i = 0; i < 1000; i++) {
+            //the real motion goes under the prediction, which is taken back and put on top again
+            if (i > 0) {
+                image.postConcat(inverse);
+            }
+            image.postScale(0.95f + random.nextFloat() * 0.1f, 0.95f + random.nextFloat() * 0.1f);
+            image.postTranslate(random.nextFloat() * 10 - 5, random.nextFloat() * 10 - 5);
+            float[] before = image.values.clone();
+
+            float fx = random.nextFloat() * 1000;
+            float fy = random.nextFloat() * 1000;
+            prediction.setPivotTransform(0.9f + random.nextFloat() * 0.2f, 0.9f + random.nextFloat() * 0.2f,
+                    random.nextFloat() * 10 - 5, fx, fy,
+                    fx + random.nextFloat() * 60 - 30, fy + random.nextFloat() * 60 - 30);
+            assertTrue(prediction.invert(inverse));
+            image.postConcat(prediction);
+
+            AffineMatrix back = new AffineMatrix();
+            back.set(image);
+            back.postConcat(inverse);
+            assertArrayEquals(before, back.values, 0.01f);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the single pass {@link AffineMatrix#setPivotTransform} frame of the image matrix animator
+ * against the postScale/mapPoints/postRotate/postTranslate chain it replaces.
+ */
+public class AnimatorFrameTest {
+
+    @Test
+    public void pivotTransform_matchesLegacyChain() throws Exception {
+        Random random = new Random(42);
+        AffineMatrix expected = new AffineMatrix();
+        AffineMatrix actual = new AffineMatrix();
+        for (int i = 0; i < 10000; i++) {
+            float scaleX = 0.05f + random.nextFloat() * 6;
+            float scaleY = random.nextBoolean() ? scaleX : 0.05f + random.nextFloat() * 6;
+            float angle = random.nextInt(8) == 0 ? 90 * random.nextInt(4) : random.nextFloat() * 720 - 360;
+            float cx = random.nextFloat() * 4000;
+            float cy = random.nextFloat() * 4000;
+            float transX = random.nextFloat() * 3000 - 1000;
+            float transY = random.nextFloat() * 3000 - 1000;
+
+            legacyFrame(expected, scaleX, scaleY, angle, cx, cy, transX, transY);
+            actual.setPivotTransform(scaleX, scaleY, angle, cx, cy, transX, transY);
+
+            float linear = Math.max(scaleX, scaleY) * 1e-5f;
+            float translate = 1e-5f * (Math.abs(transX) + Math.abs(transY) + (cx + cy) * Math.max(scaleX, scaleY)) + 1e-3f;
+            assertEquals(expected.values[AffineMatrix.SCALE_X], actual.values[AffineMatrix.SCALE_X], linear);
+            assertEquals(expected.values[AffineMatrix.SKEW_X], actual.values[AffineMatrix.SKEW_X], linear);
+            assertEquals(expected.values[AffineMatrix.SKEW_Y], actual.values[AffineMatrix.SKEW_Y], linear);
+            assertEquals(expected.values[AffineMatrix.SCALE_Y], actual.values[AffineMatrix.SCALE_Y], linear);
+            assertEquals(expected.values[AffineMatrix.TRANS_X], actual.values[AffineMatrix.TRANS_X], translate);
+            assertEquals(expected.values[AffineMatrix.TRANS_Y], actual.values[AffineMatrix.TRANS_Y], translate);
+        }
+    }
+
+    @Test
+    public void pivotTransform_movesPivotToTarget() throws Exception {
+        AffineMatrix m = new AffineMatrix();
+        m.setPivotTransform(1.7f, 1.7f, 33, 120, 80, 500, 600);
+        assertEquals(500, m.mapX(120, 80), 1e-3f);
+        assertEquals(600, m.mapY(120, 80), 1e-3f);
+    }
+
+    private static void legacyFrame(AffineMatrix m, float scaleX, float scaleY, float angle,
+                                    float cx, float cy, float transX, float transY) {
+        float[] animCenter = {cx, cy};
+        float[] center = new float[2];
+        m.reset();
+
+        m.mapPoints(center, animCenter);
+        m.postScale(scaleX, scaleY, center[0], center[1]);
+
+        float tx0 = m.values[AffineMatrix.TRANS_X];
+        float ty0 = m.values[AffineMatrix.TRANS_Y];
+
+        m.mapPoints(center, animCenter);
+        m.postRotate(angle, center[0], center[1]);
+
+        float tx1 = m.values[AffineMatrix.TRANS_X];
+        float ty1 = m.values[AffineMatrix.TRANS_Y];
+
+        float tx = (animCenter[0] - tx0) + (transX - (center[0] - tx0)) - (center[0] - tx0) + (tx1 - tx0);
+        float ty = (animCenter[1] - ty0) + (transY - (center[1] - ty0)) - (center[1] - ty0) + (ty1 - ty0);
+
+        m.postTranslate(tx - tx1, ty - ty1);
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the decode config picked by {@link DecodeFormatPolicy}.
+ */
+public class DecodeFormatPolicyTest {
+
+    @Test
+    public void preferRgb565_onlyForOpaqueImages() throws Exception {
+        assertFalse(DecodeFormatPolicy.preferRgb565(false, true, 8, XphotoView.IMAGE_QUALITY_BASE));
+        assertTrue(DecodeFormatPolicy.preferRgb565(true, true, 8, XphotoView.IMAGE_QUALITY_FULL));
+    }
+
+    @Test
+    public void preferRgb565_upgradesFullResolutionLevel() throws Exception {
+        assertTrue(DecodeFormatPolicy.preferRgb565(true, false, 2, XphotoView.IMAGE_QUALITY_FULL));
+        assertFalse(DecodeFormatPolicy.preferRgb565(true, false, 1, XphotoView.IMAGE_QUALITY_FULL));
+        //not upgraded under memory pressure
+        assertTrue(DecodeFormatPolicy.preferRgb565(true, false, 1, XphotoView.IMAGE_QUALITY_REDUCED));
+    }
+
+    @Test
+    public void isOpaqueMimeType() throws Exception {
+        assertTrue(DecodeFormatPolicy.isOpaqueMimeType("image/jpeg"));
+        assertFalse(DecodeFormatPolicy.isOpaqueMimeType("image/png"));
+        assertFalse(DecodeFormatPolicy.isOpaqueMimeType(null));
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the animations rescaled for a swapped drawable show it exactly where the old one
+ * would have been, see {@link MatrixImageView#onImageDrawableSwapped(float, float)}.
+ */
+public class DrawableSwapTest {
+
+    //a 100x150 placeholder swapped for the 400x600 full image
+    private static final float SX = 0.25f;
+    private static final float SY = 0.25f;
+
+    private static final float[] POINTS = {0, 0, 400, 0, 400, 600, 0, 600, 123, 456};
+
+    @Test
+    public void preScale_mapsScaledPoint() throws Exception {
+        AffineMatrix m = new AffineMatrix();
+        m.setPivotTransform(2.5f, 2.5f, 30, 50, 75, 300, 400);
+        AffineMatrix rescaled = new AffineMatrix();
+        rescaled.set(m);
+        rescaled.preScale(SX, SY);
+        assertSameImage(m, rescaled);
+    }
+
+    @Test
+    public void tween_rescaleDrawable() throws Exception {
+        MatrixTween tween = new MatrixTween();
+        tween.fromScaleX = tween.fromScaleY = 0.5f;
+        tween.toScaleX = tween.toScaleY = 3.6f;
+        tween.fromDegrees = 10;
+        tween.animCenterX = 50;
+        tween.animCenterY = 75;
+        tween.fromTranslateX = 40;
+        tween.fromTranslateY = 60;
+        tween.toTranslateX = 540;
+        tween.toTranslateY = 960;
+        tween.durationNanos = 300000000L;
+        tween.start(0);
+
+        AffineMatrix before = new AffineMatrix();
+        tween.computeFrame(120000000L, before);
+        tween.rescaleDrawable(SX, SY);
+        AffineMatrix after = new AffineMatrix();
+        tween.computeFrame(120000000L, after);
+        assertSameImage(before, after);
+    }
+
+    @Test
+    public void spring_rescaleDrawable() throws Exception {
+        MatrixSpring spring = new MatrixSpring();
+        spring.animCenterX = 50;
+        spring.animCenterY = 75;
+        spring.setAngle(10, 0, 30);
+        spring.setScale(0.5f, 0.5f, 3.6f, 3.6f, 2, 2);
+        spring.setTranslate(40, 60, 540, 960, 100, -100);
+        spring.start(0);
+
+        AffineMatrix before = new AffineMatrix();
+        spring.computeFrame(50000000L, before);
+        float scaleVelocity = spring.getScaleXVelocity();
+        spring.rescaleDrawable(SX, SY);
+        AffineMatrix after = new AffineMatrix();
+        spring.computeFrame(50000000L, after);
+        assertSameImage(before, after);
+        assertEquals(scaleVelocity * SX, spring.getScaleXVelocity(), 1e-4f);
+    }
+
+    @Test
+    public void fling_rescaleDrawable() throws Exception {
+        MatrixFling fling = new MatrixFling();
+        fling.scaleX = fling.scaleY = 3.6f;
+        fling.setX(-100, -2000, -1000, 0, 80);
+        fling.setY(-100, 1000, -1500, 0, 80);
+        fling.start(0);
+
+        AffineMatrix before = new AffineMatrix();
+        fling.computeFrame(50000000L, before);
+        fling.rescaleDrawable(SX, SY);
+        AffineMatrix after = new AffineMatrix();
+        fling.computeFrame(50000000L, after);
+        assertSameImage(before, after);
+    }
+
+    /**
+     * @param old      the matrix of the old drawable
+     * @param rescaled the matrix of the new drawable
+     */
+    private static void assertSameImage(AffineMatrix old, AffineMatrix rescaled) {
+        float[] oldPoints = new float[POINTS.length];
+        for (int i = 0; i < POINTS.length; i += 2) {
+            oldPoints[i] = POINTS[i] * SX;
+            oldPoints[i + 1] = POINTS[i + 1] * SY;
+        }
+        float[] expected = new float[POINTS.length];
+        float[] actual = new float[POINTS.length];
+        old.mapPoints(expected, oldPoints);
+        rescaled.mapPoints(actual, POINTS);
+        for (int i = 0; i < POINTS.length; i++) {
+            assertEquals(expected[i], actual[i], 1e-2f);
+        }
+    }
+}
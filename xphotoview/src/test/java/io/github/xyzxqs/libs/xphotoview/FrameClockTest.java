@@ -0,0 +1,140 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Steps {@link MatrixTween} animations headlessly with a {@link VirtualFrameClock}.
+ */
+public class FrameClockTest {
+
+    private static final long FRAME = VirtualFrameClock.DEFAULT_FRAME_INTERVAL_NANOS;
+
+    @Test
+    public void virtualClock_runsCallbackOncePerFrame() throws Exception {
+        VirtualFrameClock clock = new VirtualFrameClock();
+        final int[] count = new int[1];
+        FrameClock.FrameCallback callback = new FrameClock.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                count[0]++;
+            }
+        };
+        clock.postFrameCallback(callback);
+        clock.postFrameCallback(callback);
+        clock.step(FRAME);
+        assertEquals(1, count[0]);
+        assertFalse(clock.hasPendingCallbacks());
+
+        clock.postFrameCallback(callback);
+        clock.removeFrameCallback(callback);
+        clock.step(FRAME);
+        assertEquals(1, count[0]);
+    }
+
+    @Test
+    public void virtualClock_removedInFrameDoesNotRun() throws Exception {
+        final VirtualFrameClock clock = new VirtualFrameClock();
+        final int[] count = new int[1];
+        final FrameClock.FrameCallback cancelled = new FrameClock.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                count[0]++;
+            }
+        };
+        //an earlier callback of the frame cancels, then restarts the later one
+        clock.postFrameCallback(new FrameClock.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                clock.removeFrameCallback(cancelled);
+                clock.postFrameCallback(cancelled);
+            }
+        });
+        clock.postFrameCallback(cancelled);
+        clock.step(FRAME);
+        assertEquals(0, count[0]);
+        assertTrue(clock.hasPendingCallbacks());
+        clock.step(FRAME);
+        assertEquals(1, count[0]);
+    }
+
+    @Test
+    public void virtualClock_repostWaitsForNextFrame() throws Exception {
+        final VirtualFrameClock clock = new VirtualFrameClock();
+        final long[] times = new long[3];
+        clock.postFrameCallback(new FrameClock.FrameCallback() {
+            int frame = 0;
+
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                times[frame++] = frameTimeNanos;
+                if (frame < times.length) {
+                    clock.postFrameCallback(this);
+                }
+            }
+        });
+        assertEquals(3, clock.runUntilIdle(FRAME, 100));
+        assertEquals(FRAME, times[0]);
+        assertEquals(2 * FRAME, times[1]);
+        assertEquals(3 * FRAME, times[2]);
+    }
+
+    @Test
+    public void tween_isSteppedByFrameTime() throws Exception {
+        final MatrixTween tween = new MatrixTween();
+        tween.fromScaleX = tween.fromScaleY = 1;
+        tween.toScaleX = tween.toScaleY = 3;
+        tween.fromTranslateX = 0;
+        tween.toTranslateX = 300;
+        tween.durationNanos = 200 * 1000000L;
+
+        final VirtualFrameClock clock = new VirtualFrameClock(5000);
+        final AffineMatrix frame = new AffineMatrix();
+        final float[] lastScale = new float[1];
+        clock.postFrameCallback(new FrameClock.FrameCallback() {
+            boolean started;
+
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                if (!started) {
+                    tween.start(frameTimeNanos);
+                    started = true;
+                }
+                boolean finished = tween.computeFrame(frameTimeNanos, frame);
+                assertTrue(frame.values[AffineMatrix.SCALE_X] >= lastScale[0]);
+                lastScale[0] = frame.values[AffineMatrix.SCALE_X];
+                if (!finished) {
+                    clock.postFrameCallback(this);
+                }
+            }
+        });
+
+        int frames = clock.runUntilIdle(FRAME, 1000);
+        //the first frame is the start frame, then 200ms at 60fps
+        assertEquals(1 + 12, frames);
+        assertEquals(3, frame.values[AffineMatrix.SCALE_X], 0);
+        assertEquals(300, frame.values[AffineMatrix.TRANS_X], 0);
+    }
+
+    @Test
+    public void tween_defaultCurveIsAccelerateDecelerate() throws Exception {
+        assertEquals(0, MatrixTween.ACCELERATE_DECELERATE.getInterpolation(0), 1e-6f);
+        assertEquals(0.5f, MatrixTween.ACCELERATE_DECELERATE.getInterpolation(0.5f), 1e-6f);
+        assertEquals(1, MatrixTween.ACCELERATE_DECELERATE.getInterpolation(1), 1e-6f);
+
+        MatrixTween tween = new MatrixTween();
+        tween.fromScaleX = tween.fromScaleY = 1;
+        tween.toScaleX = tween.toScaleY = 1;
+        tween.fromTranslateX = 0;
+        tween.toTranslateX = 100;
+        tween.durationNanos = 100;
+        tween.start(0);
+        AffineMatrix frame = new AffineMatrix();
+        assertFalse(tween.computeFrame(50, frame));
+        assertEquals(50, frame.values[AffineMatrix.TRANS_X], 1e-3f);
+        assertTrue(tween.computeFrame(100, frame));
+    }
+}
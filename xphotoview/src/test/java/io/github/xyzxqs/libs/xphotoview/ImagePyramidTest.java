@@ -0,0 +1,85 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the level of detail switching of {@link ImagePyramid}.
+ */
+public class ImagePyramidTest {
+
+    @Test
+    public void select_startsAtBaseAndRefinesImmediately() throws Exception {
+        ImagePyramid pyramid = new ImagePyramid(16);
+        assertEquals(5, pyramid.getLevelCount());
+        assertTrue(pyramid.isBaseLevel());
+
+        assertEquals(16, pyramid.select(0.04f));
+        assertEquals(4, pyramid.select(0.25f));
+        assertEquals(1, pyramid.select(1.5f));
+    }
+
+    @Test
+    public void select_coarsensWithHysteresis() throws Exception {
+        ImagePyramid pyramid = new ImagePyramid(16);
+        assertEquals(1, pyramid.select(1f));
+
+        //just below the boundary of sample size 2, keep the finer level
+        assertEquals(1, pyramid.select(0.49f));
+        assertEquals(1, pyramid.select(0.45f));
+        //clearly below it
+        assertEquals(2, pyramid.select(0.4f));
+        //back above the boundary, refine at once
+        assertEquals(1, pyramid.select(0.51f));
+    }
+
+    @Test
+    public void select_pinchAroundBoundaryDoesNotThrash() throws Exception {
+        ImagePyramid pyramid = new ImagePyramid(8);
+        pyramid.select(0.3f);
+        int switches = 0;
+        int last = pyramid.getSampleSize();
+        for (int i = 0; i < 100; i++) {
+            float scale = 0.25f + (i % 2 == 0 ? 0.02f : -0.02f);
+            int sampleSize = pyramid.select(scale);
+            if (sampleSize != last) {
+                switches++;
+                last = sampleSize;
+            }
+        }
+        assertEquals(0, switches);
+    }
+
+    @Test
+    public void selectBase_dropsToCoarsestLevel() throws Exception {
+        ImagePyramid pyramid = new ImagePyramid(8);
+        pyramid.select(2f);
+        assertEquals(8, pyramid.selectBase());
+        assertTrue(pyramid.isBaseLevel());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsNonPowerOfTwo() throws Exception {
+        new ImagePyramid(6);
+    }
+
+    @Test
+    public void setFinestSampleSize_dropsFinerLevels() throws Exception {
+        ImagePyramid pyramid = new ImagePyramid(16);
+        assertEquals(1, pyramid.select(2f));
+
+        pyramid.setFinestSampleSize(2);
+        assertEquals(2, pyramid.getSampleSize());
+        assertEquals(2, pyramid.select(2f));
+        assertEquals(8, pyramid.select(0.1f));
+
+        pyramid.setFinestSampleSize(32);
+        assertTrue(pyramid.isBaseLevel());
+        assertEquals(16, pyramid.select(2f));
+
+        pyramid.setFinestSampleSize(1);
+        assertEquals(1, pyramid.select(2f));
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests of the tile sample size of {@link TiledImageDrawable}.
+ */
+public class ImageTileTest {
+
+    @Test
+    public void sampleSizeFor_keepsOneBitmapPixelPerViewPixel() {
+        assertEquals(1, ImageTile.sampleSizeFor(2f));
+        assertEquals(1, ImageTile.sampleSizeFor(1f));
+        assertEquals(1, ImageTile.sampleSizeFor(0.6f));
+        assertEquals(2, ImageTile.sampleSizeFor(0.5f));
+        assertEquals(2, ImageTile.sampleSizeFor(0.3f));
+        assertEquals(4, ImageTile.sampleSizeFor(0.25f));
+        assertEquals(16, ImageTile.sampleSizeFor(0.036f));
+    }
+
+    @Test
+    public void sampleSizeFor_invalidScale() {
+        assertEquals(1, ImageTile.sampleSizeFor(0f));
+        assertEquals(1, ImageTile.sampleSizeFor(-1f));
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the float precision {@link MatrixFling}.
+ */
+public class MatrixFlingTest {
+
+    private static final long FRAME = VirtualFrameClock.DEFAULT_FRAME_INTERVAL_NANOS;
+
+    @Test
+    public void fling_withinBounds_restsAtPredictedFinal() throws Exception {
+        MatrixFling fling = new MatrixFling();
+        fling.setX(-100, -2000, -5000, 0, 80);
+        fling.setY(0, 0, 0, 0, 80);
+        float expected = -100 - 2000 / MatrixFling.DEFAULT_FRICTION;
+        assertEquals(expected, fling.getFinalX(), 1e-3f);
+
+        AffineMatrix frame = run(fling);
+        //stops when slower than the rest velocity, a few pixels before the limit
+        assertEquals(expected, frame.values[AffineMatrix.TRANS_X], 10);
+    }
+
+    @Test
+    public void fling_keepsSubPixelPositions() throws Exception {
+        MatrixFling fling = new MatrixFling();
+        fling.setX(0, -100.5f, -5000, 0, 80);
+        fling.setY(0, 0, 0, 0, 80);
+        fling.start(0);
+        AffineMatrix frame = new AffineMatrix();
+        fling.computeFrame(FRAME, frame);
+        float x = frame.values[AffineMatrix.TRANS_X];
+        assertTrue(x < 0 && x > -2);
+        assertTrue(x != Math.round(x));
+    }
+
+    @Test
+    public void fling_overBound_springsBackWithinOverScroll() throws Exception {
+        MatrixFling fling = new MatrixFling();
+        fling.setX(-50, 8000, -1000, 0, 80);
+        fling.setY(0, 0, 0, 0, 80);
+        assertEquals(0, fling.getFinalX(), 0);
+
+        fling.start(0);
+        AffineMatrix frame = new AffineMatrix();
+        float maxX = Float.NEGATIVE_INFINITY;
+        int frames = 0;
+        while (!fling.computeFrame(frames * FRAME, frame)) {
+            maxX = Math.max(maxX, frame.values[AffineMatrix.TRANS_X]);
+            frames++;
+            assertTrue(frames < 600);
+        }
+        assertTrue(maxX > 0);
+        assertTrue(maxX <= 80);
+        assertEquals(0, frame.values[AffineMatrix.TRANS_X], 0);
+    }
+
+    @Test
+    public void fling_startedOverBound_returnsToBound() throws Exception {
+        MatrixFling fling = new MatrixFling();
+        fling.setX(0, 0, 0, 0, 80);
+        fling.setY(-1200, -500, -1000, 0, 80);
+        AffineMatrix frame = run(fling);
+        assertEquals(-1000, frame.values[AffineMatrix.TRANS_Y], 0);
+        assertEquals(-1000, fling.getFinalY(), 0);
+    }
+
+    @Test
+    public void fling_keepsScaleAndAngle() throws Exception {
+        MatrixFling fling = new MatrixFling();
+        fling.scaleX = fling.scaleY = 2.5f;
+        fling.setX(-10, -300, -1000, 0, 80);
+        fling.setY(-10, -300, -1000, 0, 80);
+        AffineMatrix frame = run(fling);
+        assertEquals(2.5f, frame.values[AffineMatrix.SCALE_X], 0);
+        assertEquals(2.5f, frame.values[AffineMatrix.SCALE_Y], 0);
+        assertEquals(0, frame.values[AffineMatrix.SKEW_X], 0);
+    }
+
+    private static AffineMatrix run(MatrixFling fling) {
+        fling.start(0);
+        AffineMatrix frame = new AffineMatrix();
+        int frames = 0;
+        while (!fling.computeFrame(frames * FRAME, frame)) {
+            frames++;
+            assertTrue(frames < 600);
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the critically damped {@link MatrixSpring}.
+ */
+public class MatrixSpringTest {
+
+    private static final long FRAME = VirtualFrameClock.DEFAULT_FRAME_INTERVAL_NANOS;
+
+    @Test
+    public void spring_settlesExactlyOnTarget() throws Exception {
+        MatrixSpring spring = newSpring(100, 0);
+        AffineMatrix frame = new AffineMatrix();
+        int frames = 0;
+        while (!spring.computeFrame(frames * FRAME, frame)) {
+            frames++;
+        }
+        assertEquals(0, frame.values[AffineMatrix.TRANS_X], 0);
+        assertEquals(0, spring.getTranslateXVelocity(), 0);
+        //the same move takes 13 frames with the 200ms duration based settle
+        assertTrue("settled in " + frames + " frames", frames <= 12);
+    }
+
+    @Test
+    public void spring_startsWithGivenVelocity() throws Exception {
+        MatrixSpring spring = newSpring(0, 2000);
+        AffineMatrix frame = new AffineMatrix();
+        assertFalse(spring.computeFrame(0, frame));
+        assertEquals(2000, spring.getTranslateXVelocity(), 1e-3f);
+
+        long dt = 100000;
+        spring.computeFrame(dt, frame);
+        float dx = frame.values[AffineMatrix.TRANS_X];
+        assertEquals(2000, dx / (dt / 1e9f), 10);
+    }
+
+    @Test
+    public void spring_neverOvershootsWithoutVelocity() throws Exception {
+        MatrixSpring spring = newSpring(-300, 0);
+        AffineMatrix frame = new AffineMatrix();
+        for (int i = 0; i < 60; i++) {
+            spring.computeFrame(i * FRAME, frame);
+            assertTrue(frame.values[AffineMatrix.TRANS_X] <= 0);
+        }
+    }
+
+    @Test
+    public void spring_resumesFromInterruptedVelocity() throws Exception {
+        MatrixSpring first = newSpring(200, 0);
+        AffineMatrix frame = new AffineMatrix();
+        first.computeFrame(3 * FRAME, frame);
+        float x = frame.values[AffineMatrix.TRANS_X];
+        float v = first.getTranslateXVelocity();
+
+        //retarget to 50 from where the first spring is, with its velocity
+        MatrixSpring second = new MatrixSpring();
+        second.setScale(1, 1, 1, 1, 0, 0);
+        second.setTranslate(x, 0, 50, 0, v, 0);
+        second.start(0);
+        second.computeFrame(0, frame);
+        assertEquals(x, frame.values[AffineMatrix.TRANS_X], 1e-3f);
+        assertEquals(v, second.getTranslateXVelocity(), 1e-3f);
+    }
+
+    private static MatrixSpring newSpring(float fromX, float velocityX) {
+        MatrixSpring spring = new MatrixSpring();
+        spring.setAngle(0, 0, 0);
+        spring.setScale(1, 1, 1, 1, 0, 0);
+        spring.setTranslate(fromX, 0, 0, 0, velocityX, 0);
+        spring.start(0);
+        return spring;
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.graphics.Matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link MatrixValues#decompose()} against the formulas used by the lock based
+ * {@link MatrixUtils} getters.
+ */
+public class MatrixValuesTest {
+
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void identity_isDecomposed() throws Exception {
+        MatrixValues values = new MatrixValues();
+        assertEquals(1, values.getScaleX(), 0);
+        assertEquals(1, values.getScaleY(), 0);
+        assertEquals(0, values.getAngle(), 0);
+        assertEquals(0, values.getTranslateX(), 0);
+        assertEquals(0, values.getTranslateY(), 0);
+    }
+
+    @Test
+    public void decompose_matchesMatrixUtils() throws Exception {
+        Random random = new Random(17);
+        MatrixValues values = new MatrixValues();
+        for (int i = 0; i < 10000; i++) {
+            float scale = 0.05f + random.nextFloat() * 8;
+            double radians = Math.toRadians(random.nextFloat() * 720 - 360);
+            float[] v = values.values;
+            v[Matrix.MSCALE_X] = (float) (scale * Math.cos(radians));
+            v[Matrix.MSKEW_X] = (float) (-scale * Math.sin(radians));
+            v[Matrix.MTRANS_X] = random.nextFloat() * 4000 - 2000;
+            v[Matrix.MSKEW_Y] = (float) (scale * Math.sin(radians));
+            v[Matrix.MSCALE_Y] = (float) (scale * Math.cos(radians));
+            v[Matrix.MTRANS_Y] = random.nextFloat() * 4000 - 2000;
+            values.decompose();
+
+            assertEquals(legacyScaleX(v), values.getScaleX(), EPSILON * scale);
+            assertEquals(legacyScaleY(v), values.getScaleY(), EPSILON * scale);
+            assertEquals(legacyAngle(v), values.getAngle(), EPSILON * 180);
+            assertEquals(v[Matrix.MTRANS_X], values.getTranslateX(), 0);
+            assertEquals(v[Matrix.MTRANS_Y], values.getTranslateY(), 0);
+            assertEquals(v[Matrix.MSKEW_X], values.getSkewX(), 0);
+            assertEquals(v[Matrix.MSKEW_Y], values.getSkewY(), 0);
+        }
+    }
+
+    @Test
+    public void set_copiesAllFields() throws Exception {
+        MatrixValues src = new MatrixValues();
+        src.values[Matrix.MSCALE_X] = 2;
+        src.values[Matrix.MSCALE_Y] = 3;
+        src.values[Matrix.MTRANS_X] = 5;
+        src.decompose();
+
+        MatrixValues dst = new MatrixValues();
+        dst.set(src);
+        assertEquals(2, dst.getScaleX(), 0);
+        assertEquals(3, dst.getScaleY(), 0);
+        assertEquals(5, dst.getTranslateX(), 0);
+        assertEquals(2, dst.values[Matrix.MSCALE_X], 0);
+    }
+
+    private static float legacyScaleX(float[] v) {
+        return (float) Math.sqrt(Math.pow(v[Matrix.MSCALE_X], 2) + Math.pow(v[Matrix.MSKEW_Y], 2));
+    }
+
+    private static float legacyScaleY(float[] v) {
+        return (float) Math.sqrt(Math.pow(v[Matrix.MSCALE_Y], 2) + Math.pow(v[Matrix.MSKEW_X], 2));
+    }
+
+    private static float legacyAngle(float[] v) {
+        return (float) -(Math.atan2(v[Matrix.MSKEW_X], v[Matrix.MSCALE_X]) * (180 / Math.PI));
+    }
+}
@@ -0,0 +1,160 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the viewport ordering and the cancellation of {@link TileDecodeScheduler}.
+ */
+public class TileDecodeSchedulerTest {
+
+    private static final int IMAGE_SIZE = ImageTile.TILE_SIZE * 8;
+
+    /**
+     * Blocks in the first decode until released, so the rest of the tiles wait in the queue.
+     */
+    private static class RecordingDecoder implements TileDecodeScheduler.TileDecoder {
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirst = new CountDownLatch(1);
+        final List<ImageTile> decoded = Collections.synchronizedList(new ArrayList<ImageTile>());
+        final CountDownLatch done;
+
+        RecordingDecoder(int count) {
+            done = new CountDownLatch(count);
+        }
+
+        @Override
+        public void decodeTile(ImageTile tile) {
+            if (firstStarted.getCount() > 0) {
+                firstStarted.countDown();
+                try {
+                    releaseFirst.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            decoded.add(tile);
+            done.countDown();
+        }
+    }
+
+    private static ImageTile tile(int column, int row) {
+        return new ImageTile(1, column, row, IMAGE_SIZE, IMAGE_SIZE);
+    }
+
+    @Test
+    public void schedule_decodesNearestToFocusFirst() throws Exception {
+        RecordingDecoder decoder = new RecordingDecoder(4);
+        TileDecodeScheduler scheduler = new TileDecodeScheduler(1, decoder);
+        scheduler.schedule(ImageTile.base(8, IMAGE_SIZE, IMAGE_SIZE));
+        assertTrue(decoder.firstStarted.await(5, TimeUnit.SECONDS));
+
+        ImageTile far = tile(7, 7);
+        ImageTile near = tile(0, 0);
+        ImageTile middle = tile(3, 3);
+        scheduler.schedule(far);
+        scheduler.schedule(near);
+        scheduler.schedule(middle);
+        decoder.releaseFirst.countDown();
+
+        assertTrue(decoder.done.await(5, TimeUnit.SECONDS));
+        assertEquals(near, decoder.decoded.get(1));
+        assertEquals(middle, decoder.decoded.get(2));
+        assertEquals(far, decoder.decoded.get(3));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void setFocus_reordersPendingTiles() throws Exception {
+        RecordingDecoder decoder = new RecordingDecoder(3);
+        TileDecodeScheduler scheduler = new TileDecodeScheduler(1, decoder);
+        scheduler.schedule(ImageTile.base(8, IMAGE_SIZE, IMAGE_SIZE));
+        assertTrue(decoder.firstStarted.await(5, TimeUnit.SECONDS));
+
+        ImageTile topLeft = tile(0, 0);
+        ImageTile bottomRight = tile(7, 7);
+        scheduler.schedule(topLeft);
+        scheduler.schedule(bottomRight);
+        //the viewport moves to the bottom right before the workers are free
+        scheduler.setFocus(IMAGE_SIZE, IMAGE_SIZE);
+        decoder.releaseFirst.countDown();
+
+        assertTrue(decoder.done.await(5, TimeUnit.SECONDS));
+        assertEquals(bottomRight, decoder.decoded.get(1));
+        assertEquals(topLeft, decoder.decoded.get(2));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void cancel_removesPendingTile() throws Exception {
+        RecordingDecoder decoder = new RecordingDecoder(2);
+        TileDecodeScheduler scheduler = new TileDecodeScheduler(1, decoder);
+        scheduler.schedule(ImageTile.base(8, IMAGE_SIZE, IMAGE_SIZE));
+        assertTrue(decoder.firstStarted.await(5, TimeUnit.SECONDS));
+
+        ImageTile cancelled = tile(0, 0);
+        ImageTile kept = tile(1, 0);
+        scheduler.schedule(cancelled);
+        scheduler.schedule(kept);
+        scheduler.cancel(cancelled);
+        assertEquals(1, scheduler.getQueuedCount());
+        decoder.releaseFirst.countDown();
+
+        assertTrue(decoder.done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, decoder.decoded.size());
+        assertEquals(kept, decoder.decoded.get(1));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void schedulers_shareOnePool() throws Exception {
+        final int workers = TileDecodeScheduler.defaultWorkerCount();
+        final int schedulers = 3;
+        final int tilesEach = workers * 4;
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(schedulers * tilesEach);
+        TileDecodeScheduler.TileDecoder decoder = new TileDecodeScheduler.TileDecoder() {
+            @Override
+            public void decodeTile(ImageTile tile) {
+                int now = running.incrementAndGet();
+                while (true) {
+                    int max = maxRunning.get();
+                    if (now <= max || maxRunning.compareAndSet(max, now)) {
+                        break;
+                    }
+                }
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            }
+        };
+        List<TileDecodeScheduler> list = new ArrayList<>();
+        for (int i = 0; i < schedulers; i++) {
+            TileDecodeScheduler scheduler = new TileDecodeScheduler(workers, decoder);
+            list.add(scheduler);
+            for (int t = 0; t < tilesEach; t++) {
+                scheduler.schedule(tile(t % 8, t / 8));
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= workers);
+        for (TileDecodeScheduler scheduler : list) {
+            scheduler.shutdown();
+        }
+    }
+}
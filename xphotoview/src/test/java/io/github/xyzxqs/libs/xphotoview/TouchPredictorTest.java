@@ -0,0 +1,124 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the gesture prediction of {@link TouchPredictor}.
+ */
+public class TouchPredictorTest {
+
+    private static final float DELTA = 1e-3f;
+
+    @Test
+    public void disabled_predictsNothing() throws Exception {
+        TouchPredictor predictor = new TouchPredictor(100, 0.1f, 5);
+        predictor.reset(0, 0, 0);
+        for (int i = 1; i <= 5; i++) {
+            predictor.predictFocus(i * 10, 0, i * 10);
+            predictor.predictScaleAndAngle(1, 30);
+            predictor.applyFocus();
+            predictor.applyScale();
+            predictor.applyDegrees();
+            assertFalse(predictor.hasOffsets());
+        }
+    }
+
+    @Test
+    public void predictFocus_steadyMotion() throws Exception {
+        TouchPredictor predictor = new TouchPredictor(100, 0.1f, 5);
+        predictor.setLeadTime(16);
+        predictor.reset(0, 0, 0);
+        //1 px per ms
+        for (int i = 1; i <= 20; i++) {
+            if (i == 10) {
+                //the velocity has settled
+                predictor.resetErrors();
+            }
+            predictor.predictFocus(i * 8, 0, i * 8);
+            predictor.applyFocus();
+        }
+        assertEquals(16, predictor.getOffsetX(), 0.01f);
+        assertEquals(0, predictor.getOffsetY(), DELTA);
+        assertTrue(predictor.getErrorCount() > 0);
+        assertEquals(0, predictor.getMaxError(), 0.01f);
+
+        predictor.retract();
+        assertFalse(predictor.hasOffsets());
+    }
+
+    @Test
+    public void predictFocus_clampsOvershoot() throws Exception {
+        TouchPredictor predictor = new TouchPredictor(10, 0.1f, 5);
+        predictor.setLeadTime(50);
+        predictor.reset(0, 0, 0);
+        for (int i = 1; i <= 10; i++) {
+            predictor.predictFocus(i * 40, i * 30, i * 8);
+            predictor.applyFocus();
+        }
+        assertEquals(10, Math.hypot(predictor.getOffsetX(), predictor.getOffsetY()), DELTA);
+    }
+
+    @Test
+    public void predictScaleAndAngle_clamps() throws Exception {
+        TouchPredictor predictor = new TouchPredictor(10, 0.1f, 5);
+        predictor.setLeadTime(20);
+        predictor.predictScaleAndAngle(0.5f, 100);
+        predictor.applyScale();
+        predictor.applyDegrees();
+        assertEquals(1.01f, predictor.getOffsetScale(), DELTA);
+        assertEquals(2, predictor.getOffsetDegrees(), DELTA);
+        predictor.predictScaleAndAngle(20, -1000);
+        predictor.applyScale();
+        predictor.applyDegrees();
+        assertEquals(1.1f, predictor.getOffsetScale(), DELTA);
+        assertEquals(-5, predictor.getOffsetDegrees(), DELTA);
+
+        predictor.retract();
+        assertEquals(1, predictor.getOffsetScale(), DELTA);
+        assertEquals(0, predictor.getOffsetDegrees(), DELTA);
+    }
+
+    @Test
+    public void unappliedTargets_areNotOffsets() throws Exception {
+        TouchPredictor predictor = new TouchPredictor(100, 0.1f, 5);
+        predictor.setLeadTime(16);
+        predictor.reset(0, 0, 0);
+        //the scroll is too small to be applied, its prediction is not either
+        predictor.predictFocus(8, 0, 8);
+        assertFalse(predictor.hasOffsets());
+        predictor.predictFocus(16, 0, 16);
+        predictor.applyFocus();
+        final float applied = predictor.getOffsetX();
+        assertTrue(applied > 0);
+        //the next scroll is dropped, the applied offset is kept
+        predictor.predictFocus(24, 0, 24);
+        assertEquals(applied, predictor.getOffsetX(), DELTA);
+
+        //the scale inside the slop and the angle of a refused rotation are never applied
+        predictor.predictScaleAndAngle(2, 200);
+        predictor.applyScale();
+        assertEquals(1.032f, predictor.getOffsetScale(), DELTA);
+        assertEquals(0, predictor.getOffsetDegrees(), DELTA);
+    }
+
+    @Test
+    public void errors_measuredAtTargetTime() throws Exception {
+        TouchPredictor predictor = new TouchPredictor(100, 0.1f, 5);
+        predictor.setLeadTime(10);
+        predictor.reset(0, 0, 0);
+        predictor.predictFocus(10, 0, 10);
+        //predicted x = 10 + 6 at 20 ms, but the finger stopped
+        predictor.predictFocus(10, 0, 20);
+        assertEquals(1, predictor.getErrorCount());
+        assertEquals(6, predictor.getMeanError(), DELTA);
+        assertEquals(6, predictor.getMaxError(), DELTA);
+
+        predictor.resetErrors();
+        assertEquals(0, predictor.getErrorCount());
+        assertEquals(0, predictor.getMeanError(), DELTA);
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the binary format of {@link TouchTrace} and the replay report of
+ * {@link TouchTraceReplay}.
+ */
+public class TouchTraceTest {
+
+    private static final int ACTION_DOWN = 0;
+    private static final int ACTION_MOVE = 2;
+
+    private static byte[] writeTrace() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TouchTrace.Writer writer = new TouchTrace.Writer(out);
+        writer.beginEvent(ACTION_DOWN, 0, 1, 1);
+        writer.writePointerId(0);
+        writer.writeSampleTime(100000);
+        writer.writeCoords(10, 20);
+
+        //two pointers, a historical sample and the current one
+        writer.beginEvent(ACTION_MOVE, 0, 2, 2);
+        writer.writePointerId(0);
+        writer.writePointerId(3);
+        writer.writeSampleTime(100008);
+        writer.writeCoords(11, 21);
+        writer.writeCoords(111, 121);
+        writer.writeSampleTime(100016);
+        writer.writeCoords(12, 22);
+        writer.writeCoords(112, 122);
+        writer.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        TouchTrace.Reader reader = new TouchTrace.Reader(new ByteArrayInputStream(writeTrace()));
+        TouchTrace.Event event = new TouchTrace.Event();
+
+        assertTrue(reader.next(event));
+        assertEquals(ACTION_DOWN, event.action);
+        assertEquals(1, event.pointerCount);
+        assertEquals(1, event.sampleCount);
+        assertEquals(0, event.getEventTime());
+        assertEquals(20, event.getY(0, 0), 0);
+
+        assertTrue(reader.next(event));
+        assertEquals(ACTION_MOVE, event.action);
+        assertEquals(2, event.pointerCount);
+        assertEquals(2, event.sampleCount);
+        assertEquals(3, event.pointerIds[1]);
+        assertEquals(8, event.eventTimes[0]);
+        assertEquals(16, event.getEventTime());
+        assertEquals(111, event.getX(0, 1), 0);
+        assertEquals(22, event.getY(1, 0), 0);
+        assertEquals(122, event.getY(1, 1), 0);
+
+        assertFalse(reader.next(event));
+    }
+
+    @Test
+    public void truncatedTrace_endsAtLastFullEvent() throws Exception {
+        byte[] trace = writeTrace();
+        TouchTrace.Reader reader = new TouchTrace.Reader(
+                new ByteArrayInputStream(Arrays.copyOf(trace, trace.length - 3)));
+        TouchTrace.Event event = new TouchTrace.Event();
+        assertTrue(reader.next(event));
+        assertFalse(reader.next(event));
+    }
+
+    @Test(expected = IOException.class)
+    public void notATrace() throws Exception {
+        new TouchTrace.Reader(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+    }
+
+    @Test
+    public void report_maxTransformDifference() throws Exception {
+        TouchTraceReplay.Report a = new TouchTraceReplay.Report();
+        TouchTraceReplay.Report b = new TouchTraceReplay.Report();
+        for (int i = 0; i < 3; i++) {
+            TouchTraceReplay.Frame frameA = new TouchTraceReplay.Frame();
+            frameA.time = i;
+            frameA.scaleX = 1;
+            frameA.touchNanos = 100;
+            a.frames.add(frameA);
+            TouchTraceReplay.Frame frameB = new TouchTraceReplay.Frame();
+            frameB.time = i;
+            frameB.scaleX = 1;
+            frameB.translateY = i * 0.5f;
+            frameB.frameNanos = 300 * i;
+            b.frames.add(frameB);
+        }
+        assertEquals(0, a.maxTransformDifference(a), 0);
+        assertEquals(1, a.maxTransformDifference(b), 0);
+        assertEquals(600, b.getMaxWorkNanos());
+        assertEquals(100, a.getMeanWorkNanos());
+
+        b.frames.remove(2);
+        assertEquals(Float.POSITIVE_INFINITY, a.maxTransformDifference(b), 0);
+    }
+}
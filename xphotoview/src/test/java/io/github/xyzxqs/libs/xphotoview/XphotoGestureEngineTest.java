@@ -0,0 +1,240 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the gesture behavior of {@link XphotoGestureEngine}, with a headless host.
+ */
+public class XphotoGestureEngineTest {
+
+    private static final float DELTA = 1e-3f;
+
+    private static class HeadlessHost implements XphotoGestureEngine.Host {
+        final AffineMatrix transform = new AffineMatrix();
+        final XphotoGestureEngine.SettleTarget lastSettle = new XphotoGestureEngine.SettleTarget();
+        int settleCount;
+        int flingCount;
+        int dismissCount;
+        boolean dismissible;
+        boolean inTransition;
+
+        @Override
+        public void postTranslate(float deltaX, float deltaY) {
+            transform.postTranslate(deltaX, deltaY);
+        }
+
+        @Override
+        public void postScale(float deltaScale, float px, float py) {
+            transform.postScale(deltaScale, deltaScale, px, py);
+        }
+
+        @Override
+        public void postRotate(float deltaDegrees, float px, float py) {
+            transform.postRotate(deltaDegrees, px, py);
+        }
+
+        @Override
+        public void cancelSettle() {
+        }
+
+        @Override
+        public boolean settle(@NonNull XphotoGestureEngine.SettleTarget target) {
+            settleCount++;
+            lastSettle.hasScale = target.hasScale;
+            lastSettle.scale = target.scale;
+            lastSettle.hasCenter = target.hasCenter;
+            lastSettle.centerX = target.centerX;
+            lastSettle.centerY = target.centerY;
+            lastSettle.fitXY = target.fitXY;
+            return true;
+        }
+
+        @Override
+        public boolean fling(float velocityX, float velocityY,
+                             float minX, float maxX, float minY, float maxY) {
+            flingCount++;
+            return true;
+        }
+
+        @Override
+        public boolean canDismiss() {
+            return dismissible;
+        }
+
+        @Override
+        public void dismiss() {
+            dismissCount++;
+        }
+
+        @Override
+        public boolean isInTransition() {
+            return inTransition;
+        }
+    }
+
+    private HeadlessHost host;
+    private XphotoGestureEngine engine;
+
+    @Before
+    public void setUp() throws Exception {
+        host = new HeadlessHost();
+        engine = new XphotoGestureEngine(host.transform, host);
+        //a 2000x1500 photo in a 1000x2000 view, laid out at scale 0.5 in the middle
+        engine.setLayout(1000, 2000, 2000, 1500);
+        host.transform.setValues(0.5f, 0, 0, 0, 0.5f, (2000 - 750) / 2f);
+    }
+
+    @Test
+    public void setLayout() throws Exception {
+        assertEquals(0.5f, engine.getLaidOutScale(), DELTA);
+        assertFalse(engine.isLongPhoto());
+
+        engine.setLayout(1000, 2000, 1000, 3000);
+        assertTrue(engine.isLongPhoto());
+    }
+
+    @Test
+    public void transition_ownsTheImage() throws Exception {
+        host.inTransition = true;
+        float[] before = host.transform.values.clone();
+        engine.onDown();
+        assertFalse(engine.onSingleFingerScroll(900, 10, 10));
+        assertFalse(engine.onMultiFingerScroll(10, 10));
+        assertFalse(engine.onScale(1.5f, 500, 1000));
+        assertFalse(engine.onRotation(10, 500, 1000));
+        assertArrayEquals(before, host.transform.values, 0);
+    }
+
+    @Test
+    public void doubleTap_zoomsByStepsAtTheTap() throws Exception {
+        engine.onDown();
+        assertTrue(engine.onDoubleTap(300, 900));
+        assertEquals(1, host.settleCount);
+        assertEquals(1f, host.lastSettle.scale, DELTA);
+        assertTrue(host.lastSettle.hasCenter);
+        assertEquals(300, host.lastSettle.centerX, DELTA);
+        //the up of the double tap does not settle again
+        assertFalse(engine.onUp());
+        assertEquals(1, host.settleCount);
+
+        host.transform.postScale(2, 2, 300, 900);
+        engine.onDoubleTap(300, 900);
+        assertEquals(0.5f, host.lastSettle.scale, DELTA);
+    }
+
+    @Test
+    public void scrollDown_shrinksAndDismisses() throws Exception {
+        host.dismissible = true;
+        engine.onDown();
+        for (int i = 1; i <= 10; i++) {
+            engine.onSingleFingerScroll(1000 + i * 30, 0, -30);
+        }
+        assertTrue(scaleOf(host.transform) < 0.5f);
+        assertEquals(0, host.dismissCount);
+        engine.onUp();
+        assertEquals(1, host.dismissCount);
+        assertEquals(0, host.settleCount);
+    }
+
+    @Test
+    public void scrollDown_settlesBackWithoutInitArgs() throws Exception {
+        engine.onDown();
+        for (int i = 1; i <= 10; i++) {
+            engine.onSingleFingerScroll(1000 + i * 30, 0, -30);
+        }
+        engine.onUp();
+        assertEquals(0, host.dismissCount);
+        assertEquals(1, host.settleCount);
+        assertEquals(0.5f, host.lastSettle.scale, DELTA);
+    }
+
+    @Test
+    public void rotation_onlyAfterZoomOut() throws Exception {
+        engine.onScale(1.2f, 500, 1000);
+        assertFalse(engine.onRotation(10, 500, 1000));
+        engine.onUp();
+
+        engine.onScale(0.8f, 500, 1000);
+        assertTrue(engine.onRotation(10, 500, 1000));
+        assertEquals(10, host.transform.decompose(new MatrixValues()).getAngle(), DELTA);
+    }
+
+    @Test
+    public void fling_onlyWhenImageIsLargerThanView() throws Exception {
+        engine.onDown();
+        assertFalse(engine.onFling(0, 3000));
+        assertEquals(0, host.flingCount);
+
+        host.transform.postScale(4, 4, 500, 1000);
+        assertTrue(engine.onFling(0, 3000));
+        assertEquals(1, host.flingCount);
+        //the fling settles the image, not the up
+        engine.onUp();
+        assertEquals(0, host.settleCount);
+        //flung over the top edge
+        host.transform.postTranslate(0, 600);
+        engine.onFlingEnd();
+        assertEquals(1, host.settleCount);
+    }
+
+    @Test
+    public void fuzz_keepsTransformFinite() throws Exception {
+        Random random = new Random(42);
+        host.dismissible = true;
+        for (int i = 0; i < 1000000; i++) {
+            switch (random.nextInt(10)) {
+                case 0:
+                    engine.onDown();
+                    break;
+                case 1:
+                    engine.onUp();
+                    break;
+                case 2:
+                    engine.onDoubleTap(random.nextFloat() * 1000, random.nextFloat() * 2000);
+                    break;
+                case 3:
+                    engine.onFling(random.nextFloat() * 8000 - 4000, random.nextFloat() * 8000 - 4000);
+                    break;
+                case 4:
+                case 5:
+                    engine.onScale(0.9f + random.nextFloat() * 0.2f, random.nextFloat() * 1000, random.nextFloat() * 2000);
+                    break;
+                case 6:
+                    engine.onRotation(random.nextFloat() * 10 - 5, random.nextFloat() * 1000, random.nextFloat() * 2000);
+                    break;
+                case 7:
+                    engine.onMultiFingerScroll(random.nextFloat() * 40 - 20, random.nextFloat() * 40 - 20);
+                    break;
+                default:
+                    engine.onSingleFingerScroll(random.nextFloat() * 2000, random.nextFloat() * 40 - 20, random.nextFloat() * 40 - 20);
+                    break;
+            }
+            assertSane(host.transform, i);
+            if (i % 1000 == 0) {
+                //the settle animations are not run, start over from the laid out image
+                host.transform.setValues(0.5f, 0, 0, 0, 0.5f, (2000 - 750) / 2f);
+            }
+        }
+    }
+
+    private static void assertSane(AffineMatrix transform, int event) {
+        for (float value : transform.values) {
+            assertFalse("event " + event, Float.isNaN(value) || Float.isInfinite(value));
+        }
+        assertTrue("event " + event, scaleOf(transform) > 0);
+    }
+
+    private static float scaleOf(AffineMatrix transform) {
+        return transform.decompose(new MatrixValues()).getScaleX();
+    }
+}
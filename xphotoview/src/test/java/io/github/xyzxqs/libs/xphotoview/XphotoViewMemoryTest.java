@@ -0,0 +1,30 @@
+package io.github.xyzxqs.libs.xphotoview;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests of the image quality picked by {@link XphotoView} for the memory trim levels.
+ */
+public class XphotoViewMemoryTest {
+
+    @Test
+    public void imageQualityForTrimLevel_degradesWithPressure() throws Exception {
+        assertEquals(XphotoView.IMAGE_QUALITY_FULL, XphotoView.imageQualityForTrimLevel(0));
+        assertEquals(XphotoView.IMAGE_QUALITY_TRIMMED,
+                XphotoView.imageQualityForTrimLevel(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+        assertEquals(XphotoView.IMAGE_QUALITY_REDUCED,
+                XphotoView.imageQualityForTrimLevel(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+        assertEquals(XphotoView.IMAGE_QUALITY_BASE,
+                XphotoView.imageQualityForTrimLevel(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertEquals(XphotoView.IMAGE_QUALITY_TRIMMED,
+                XphotoView.imageQualityForTrimLevel(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(XphotoView.IMAGE_QUALITY_BASE,
+                XphotoView.imageQualityForTrimLevel(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+        assertEquals(XphotoView.IMAGE_QUALITY_BASE,
+                XphotoView.imageQualityForTrimLevel(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+    }
+}